@@ -0,0 +1,61 @@
+package micro.commons.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+import micro.commons.concurrent.LockMode;
+
+/**
+ * 声明式分布式锁,锁在方法调用外层获取,与@Transactional同时使用时锁持有至事务提交之后
+ * 
+ * <pre>
+ * &#64;DistributedLock(name = "syncData", key = "#id", timeout = 5)
+ * public void syncDataById(int id)
+ * </pre>
+ * 
+ * @author gewx
+ **/
+@Target({ ElementType.METHOD })
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface DistributedLock {
+
+	/**
+	 * 锁钥前缀,默认类名.方法名
+	 **/
+	String name() default "";
+
+	/**
+	 * 锁钥SpEL表达式,支持#参数名、#p0、#a0
+	 **/
+	String key();
+
+	/**
+	 * 锁租期,默认10
+	 **/
+	long timeout() default 10;
+
+	/**
+	 * 最长等待时间,默认0即获取失败立即抛出并发异常
+	 **/
+	long waitTime() default 0;
+
+	/**
+	 * timeout、waitTime时间单位,默认秒
+	 **/
+	TimeUnit unit() default TimeUnit.SECONDS;
+
+	/**
+	 * 锁模式,默认互斥锁
+	 **/
+	LockMode mode() default LockMode.EXCLUSIVE;
+
+	/**
+	 * 并发异常提示信息
+	 **/
+	String tips() default "";
+}
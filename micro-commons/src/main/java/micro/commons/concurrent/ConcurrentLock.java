@@ -1,19 +1,22 @@
 package micro.commons.concurrent;
 
-import java.util.HashSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Component;
 
 import micro.commons.annotation.ThreadSafe;
 import micro.commons.exception.ConcurrentException;
  
 /**
- * 并发处理,基于Redis setNx控制. REMARKS: 针对复合锁,子锁超时时间建议<根锁
+ * 并发处理,基于Redis setNx控制,锁值为持有者令牌,同一线程支持重入. REMARKS: 针对复合锁,子锁在根锁执行完毕后统一释放,子锁超时时间建议<根锁
  * 
  * @author gewx
  **/
@@ -22,14 +25,19 @@ import micro.commons.exception.ConcurrentException;
 public final class ConcurrentLock {
 
 	/**
-	 * 分布式锁VALUE
+	 * 分布式锁Key
 	 **/
-	private static final String VALUE = "TRUE";
+	private static final ThreadLocal<String> KEY = new ThreadLocal<>();
 
 	/**
-	 * 分布式锁Key
+	 * 分布式原子组合锁Key
 	 **/
-	private static final ThreadLocal<String> KEY = new ThreadLocal<>();
+	private static final ThreadLocal<List<String>> ALL_KEYS = new ThreadLocal<>();
+
+	/**
+	 * 分布式锁模式,默认互斥锁
+	 **/
+	private static final ThreadLocal<LockMode> MODE = ThreadLocal.withInitial(() -> LockMode.EXCLUSIVE);
 
 	/**
 	 * 分布式锁超时提示消息
@@ -37,42 +45,100 @@ public final class ConcurrentLock {
 	private static final ThreadLocal<String> TIPS = new ThreadLocal<>();
 
 	/**
-	 * 分布式复合锁Key
+	 * 分布式复合锁Key,按获取顺序入栈
 	 **/
-	private static final ThreadLocal<HashSet<String>> MULTIWAY = ThreadLocal.withInitial(() -> new HashSet<>(8));
+	private static final ThreadLocal<Deque<String>> MULTIWAY = ThreadLocal.withInitial(() -> new ArrayDeque<>(8));
 
 	/**
-	 * 分布式复合锁计数器
+	 * 分布式复合锁计数器,即当前锁嵌套深度
 	 **/
 	private static final ThreadLocal<Integer> COUNTER = ThreadLocal.withInitial(() -> 0);
 
 	/**
-	 * 分布式锁超时数值,默认10. 单位:秒
+	 * 当前待校验的栅栏令牌,供FencingTokenInterceptor改写UPDATE语句
+	 **/
+	private static final ThreadLocal<Long> FENCE = new ThreadLocal<>();
+
+	/**
+	 * 分布式锁超时数值(锁租期),默认10秒. 单位:毫秒. 执行单元未结束前由看门狗自动续期
+	 **/
+	private static final ThreadLocal<Long> TIME_OUT = ThreadLocal.withInitial(() -> 10_000L);
+
+	/**
+	 * 分布式锁等待时间,默认0即获取失败立即抛出并发异常. 单位:毫秒
 	 **/
-	private static final ThreadLocal<Integer> TIME_OUT = ThreadLocal.withInitial(() -> 10);
+	private static final ThreadLocal<Long> WAIT_TIME = ThreadLocal.withInitial(() -> 0L);
 
 	@Autowired
-	private RedisTemplate<String, String> redisTemplate;
+	private RedisLockEngine lockEngine;
 
-	public ConcurrentLock key(String key) {
-		if (StringUtils.isNotBlank(KEY.get())) {
-			MULTIWAY.get().add(KEY.get());
-			MULTIWAY.get().add(key);
-		}
+	@Autowired
+	private LockMetrics lockMetrics;
 
+	public ConcurrentLock key(String key) {
 		KEY.set(key);
 		return this;
 	}
 
 	/**
-	 * 设置超时时间
+	 * 设置原子组合锁,一组锁钥由一次Lua脚本全部获取或全部失败,锁钥按固定顺序加锁避免死锁.
+	 * REMARKS: Redis集群模式下一组锁钥须使用相同hash tag,如{cargo}:1001
+	 * 
+	 * @author gewx
+	 * @param keys 锁钥集合
+	 * @return ConcurrentLock对象
+	 **/
+	public ConcurrentLock lockAll(String... keys) {
+		ALL_KEYS.set(Arrays.asList(keys));
+		return this;
+	}
+
+	/**
+	 * 设置共享读锁模式,多个读者可同时执行,与写锁互斥
+	 * 
+	 * @author gewx
+	 * @return ConcurrentLock对象
+	 **/
+	public ConcurrentLock read() {
+		MODE.set(LockMode.READ);
+		return this;
+	}
+
+	/**
+	 * 设置排他写锁模式,与读锁、写锁互斥,写者等待期间新读者不再进入
+	 * 
+	 * @author gewx
+	 * @return ConcurrentLock对象
+	 **/
+	public ConcurrentLock write() {
+		MODE.set(LockMode.WRITE);
+		return this;
+	}
+
+	/**
+	 * 设置超时时间,即锁租期. 执行单元运行期间看门狗按租期1/3间隔续期,进程崩溃后锁在租期内自动失效
 	 * 
 	 * @author gewx
 	 * @param timeOut 超时时间,单位:秒
 	 * @return ConcurrentLock对象
 	 **/
 	public ConcurrentLock timeOut(Integer timeOut) {
-		TIME_OUT.set(timeOut);
+		TIME_OUT.set(TimeUnit.SECONDS.toMillis(timeOut));
+		return this;
+	}
+
+	/**
+	 * 设置阻塞等待模式. 锁被占用时订阅锁释放通知等待,超过等待时间仍未获取则抛出并发异常
+	 * 
+	 * @author gewx
+	 * @param waitTime  最长等待时间
+	 * @param leaseTime 锁租期
+	 * @param unit      时间单位
+	 * @return ConcurrentLock对象
+	 **/
+	public ConcurrentLock tryLock(long waitTime, long leaseTime, TimeUnit unit) {
+		WAIT_TIME.set(unit.toMillis(waitTime));
+		TIME_OUT.set(unit.toMillis(leaseTime));
 		return this;
 	}
 
@@ -96,20 +162,12 @@ public final class ConcurrentLock {
 	 * @return T 返回结果对象
 	 **/
 	public <T> T execute(Callable<T> execute) {
-		Exception exception = null;
+		List<String> keys = before();
+		long start = System.nanoTime();
 		try {
-			try {
-				before();
-				T t = execute.invoke();
-				return t;
-			} catch (Exception ex) {
-				exception = ex;
-				throw ex;
-			}
+			return execute.invoke();
 		} finally {
-			if (!(exception instanceof ConcurrentException)) {
-				after();
-			}
+			after(keys, start);
 		}
 	}
 
@@ -121,22 +179,67 @@ public final class ConcurrentLock {
 	 * @return T 返回结果对象
 	 **/
 	public void run(Runnable execute) {
-		Exception exception = null;
+		List<String> keys = before();
+		long start = System.nanoTime();
 		try {
-			try {
-				before();
-				execute.invoke();
-			} catch (Exception ex) {
-				exception = ex;
-				throw ex;
-			}
+			execute.invoke();
 		} finally {
-			if (!(exception instanceof ConcurrentException)) {
-				after();
+			after(keys, start);
+		}
+	}
+
+	/**
+	 * 获取当前执行单元(最内层锁)的栅栏令牌,同一锁钥每次获取的令牌单调递增
+	 * 
+	 * @author gewx
+	 * @return 栅栏令牌,不在执行单元内或读锁返回0
+	 **/
+	public long fencingToken() {
+		String holdKey = MULTIWAY.get().peek();
+		return holdKey == null ? 0 : lockEngine.getFencingToken(holdKey);
+	}
+
+	/**
+	 * 携带栅栏令牌执行更新,执行单元内的UPDATE语句由FencingTokenInterceptor追加令牌校验,
+	 * 锁过期后被其他持有者以更大令牌写入的记录不再被更新(受影响行数为0)
+	 * 
+	 * <pre>
+	 * concurrentLock.key("cargo:" + id).execute(() -> concurrentLock.fenced(() -> demoDao.updateById(user)));
+	 * </pre>
+	 * 
+	 * @author gewx
+	 * @param update 更新执行单元
+	 * @return T 返回结果对象
+	 **/
+	public <T> T fenced(Callable<T> update) {
+		long fence = fencingToken();
+		if (fence <= 0) {
+			throw new ConcurrentException("并发异常,栅栏令牌缺失~");
+		}
+
+		Long previous = FENCE.get();
+		FENCE.set(fence);
+		try {
+			return update.invoke();
+		} finally {
+			if (previous == null) {
+				FENCE.remove();
+			} else {
+				FENCE.set(previous);
 			}
 		}
 	}
 
+	/**
+	 * 获取当前待校验的栅栏令牌
+	 * 
+	 * @author gewx
+	 * @return 栅栏令牌,未处于fenced执行单元内返回null
+	 **/
+	public static Long currentFence() {
+		return FENCE.get();
+	}
+
 	/**
 	 * 手工释放锁,解决某些锁内资源异步情况下锁冲突问题[注:需要与幂等设计配合]
 	 * 
@@ -145,50 +248,92 @@ public final class ConcurrentLock {
 	 * @return void
 	 **/
 	public void release(String lockKey) {
-		redisTemplate.delete(lockKey);
+		lockEngine.forceUnlock(lockKey);
 	}
 
 	/**
-	 * 并发执行前置
+	 * 并发执行前置,获取锁并入栈
+	 * 
+	 * @return 锁钥集合
 	 **/
-	private void before() {
+	private List<String> before() {
 		String key = KEY.get();
-		if (StringUtils.isBlank(key)) {
+		List<String> allKeys = ALL_KEYS.get();
+		LockMode mode = MODE.get();
+		long timeOut = TIME_OUT.get();
+		long waitTime = WAIT_TIME.get();
+		String tips = TIPS.get();
+		KEY.remove();
+		ALL_KEYS.remove();
+		MODE.remove();
+		TIME_OUT.remove();
+		WAIT_TIME.remove();
+		TIPS.remove();
+
+		List<String> keys = allKeys != null ? allKeys : new ArrayList<>(1);
+		if (allKeys == null && key != null) {
+			keys.add(key);
+		}
+		if (keys.isEmpty() || keys.stream().anyMatch(StringUtils::isBlank)) {
 			throw new ConcurrentException("并发异常,锁钥缺失~");
 		}
 
-		boolean setNx = redisTemplate.opsForValue().setIfAbsent(key, VALUE, TIME_OUT.get(), TimeUnit.SECONDS);
-		if (!setNx) {
-			throw new ConcurrentException(ObjectUtils.defaultIfNull(TIPS.get(), "并发异常,请联系管理员!"));
+		if (mode != LockMode.EXCLUSIVE && keys.size() > 1) {
+			throw new ConcurrentException("并发异常,读写锁不支持组合锁钥~");
+		}
+
+		long start = System.nanoTime();
+		boolean locked = false;
+		try {
+			locked = acquire(keys, mode, waitTime, timeOut);
+		} finally {
+			lockMetrics.acquire(keys, System.nanoTime() - start, locked);
+		}
+		if (!locked) {
+			throw new ConcurrentException(ObjectUtils.defaultIfNull(tips, "并发异常,请联系管理员!"));
+		}
+
+		keys.stream().distinct().map(val -> RedisLockEngine.holdKey(val, mode)).forEach(MULTIWAY.get()::push);
+		COUNTER.set(COUNTER.get() + 1);
+		return keys;
+	}
+
+	private boolean acquire(List<String> keys, LockMode mode, long waitTime, long timeOut) {
+		boolean locked;
+		if (mode == LockMode.READ) {
+			locked = lockEngine.tryReadLock(keys.get(0), waitTime, timeOut, TimeUnit.MILLISECONDS);
+		} else if (mode == LockMode.WRITE) {
+			locked = lockEngine.tryWriteLock(keys.get(0), waitTime, timeOut, TimeUnit.MILLISECONDS);
+		} else if (keys.size() > 1) {
+			locked = lockEngine.tryLockAll(keys, waitTime, timeOut, TimeUnit.MILLISECONDS);
+		} else if (waitTime > 0) {
+			locked = lockEngine.tryLock(keys.get(0), waitTime, timeOut, TimeUnit.MILLISECONDS);
+		} else {
+			locked = lockEngine.tryLock(keys.get(0), timeOut, TimeUnit.MILLISECONDS);
 		}
+		return locked;
 	}
 
 	/**
-	 * 并发执行后置
+	 * 并发执行后置,根锁执行完毕后一次性释放全部锁
+	 * 
+	 * @param keys  锁钥集合
+	 * @param start 执行开始时间,单位:纳秒
 	 **/
-	private void after() {
-		if (MULTIWAY.get().isEmpty()) {
-			try {
-				String key = KEY.get();
-				redisTemplate.delete(key);
-			} finally {
-				KEY.remove();
-				TIME_OUT.remove();
-				TIPS.remove();
-			}
-		} else {
-			COUNTER.set(COUNTER.get() + 1);
-			if (COUNTER.get().intValue() == MULTIWAY.get().size()) {
-				try {
-					MULTIWAY.get().stream().forEach(redisTemplate::delete);
-				} finally {
-					MULTIWAY.remove();
-					COUNTER.remove();
-					KEY.remove();
-					TIME_OUT.remove();
-					TIPS.remove();
-				}
-			}
+	private void after(List<String> keys, long start) {
+		int counter = COUNTER.get() - 1;
+		if (counter > 0) {
+			COUNTER.set(counter);
+			lockMetrics.release(keys, System.nanoTime() - start);
+			return;
+		}
+
+		try {
+			lockEngine.unlockAll(MULTIWAY.get());
+		} finally {
+			MULTIWAY.remove();
+			COUNTER.remove();
+			lockMetrics.release(keys, System.nanoTime() - start);
 		}
 	}
 }
@@ -0,0 +1,85 @@
+package micro.commons.concurrent;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import micro.commons.annotation.DistributedLock;
+
+/**
+ * 声明式分布式锁配置
+ *
+ * @author gewx
+ **/
+@Configuration
+public class DistributedLockConfiguration {
+
+	/**
+	 * 拦截器顺序,须先于事务拦截器(默认Ordered.LOWEST_PRECEDENCE)执行,保证锁在事务提交后释放
+	 **/
+	public static final int ORDER = Ordered.LOWEST_PRECEDENCE - 100;
+
+	/**
+	 * 锁释放通知订阅容器名称
+	 **/
+	public static final String RELEASE_CONTAINER = "lockReleaseListenerContainer";
+
+	/**
+	 * 锁释放通知派发线程数,通知处理仅唤醒等待者
+	 **/
+	private static final int RELEASE_DISPATCH_THREADS = 2;
+
+	/**
+	 * 锁释放通知派发队列容量,队满丢弃(等待者由兜底轮询重试)
+	 **/
+	private static final int RELEASE_DISPATCH_QUEUE = 1024;
+
+	/**
+	 * 声明式分布式锁切面
+	 *
+	 * @author gewx
+	 **/
+	@Bean
+	@Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+	public static DefaultPointcutAdvisor distributedLockAdvisor(ObjectProvider<ConcurrentLock> concurrentLock) {
+		DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(
+				AnnotationMatchingPointcut.forMethodAnnotation(DistributedLock.class),
+				new DistributedLockInterceptor(concurrentLock));
+		advisor.setOrder(ORDER);
+		return advisor;
+	}
+
+	/**
+	 * 锁释放通知订阅容器. 通知由有界线程池派发,订阅连接使用单独线程
+	 *
+	 * @author gewx
+	 **/
+	@Bean(RELEASE_CONTAINER)
+	public RedisMessageListenerContainer lockReleaseListenerContainer(RedisConnectionFactory connectionFactory) {
+		ThreadPoolTaskExecutor dispatcher = new ThreadPoolTaskExecutor();
+		dispatcher.setCorePoolSize(RELEASE_DISPATCH_THREADS);
+		dispatcher.setMaxPoolSize(RELEASE_DISPATCH_THREADS);
+		dispatcher.setQueueCapacity(RELEASE_DISPATCH_QUEUE);
+		dispatcher.setDaemon(true);
+		dispatcher.setThreadNamePrefix("MICRO_LOCK_RELEASE_");
+		dispatcher.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+		dispatcher.initialize();
+
+		RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+		container.setConnectionFactory(connectionFactory);
+		container.setTaskExecutor(dispatcher);
+		container.setSubscriptionExecutor(new SimpleAsyncTaskExecutor("MICRO_LOCK_SUBSCRIBE_"));
+		return container;
+	}
+}
@@ -0,0 +1,84 @@
+package micro.commons.concurrent;
+
+import java.lang.reflect.Method;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.annotation.AnnotationUtils;
+
+import micro.commons.annotation.DistributedLock;
+import micro.commons.annotation.ThreadSafe;
+import micro.commons.exception.ConcurrentException;
+
+/**
+ * 声明式分布式锁拦截器
+ *
+ * @author gewx
+ **/
+@ThreadSafe
+public final class DistributedLockInterceptor implements MethodInterceptor {
+
+	private final LockExpressionEvaluator evaluator = new LockExpressionEvaluator();
+
+	private final ObjectProvider<ConcurrentLock> concurrentLock;
+
+	public DistributedLockInterceptor(ObjectProvider<ConcurrentLock> concurrentLock) {
+		this.concurrentLock = concurrentLock;
+	}
+
+	@Override
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		Class<?> targetClass = invocation.getThis() != null ? AopUtils.getTargetClass(invocation.getThis()) : null;
+		Method method = AopUtils.getMostSpecificMethod(invocation.getMethod(), targetClass);
+		DistributedLock lock = AnnotationUtils.findAnnotation(method, DistributedLock.class);
+		if (lock == null) {
+			return invocation.proceed();
+		}
+
+		Object key = evaluator.key(lock.key(), method, targetClass, invocation.getThis(), invocation.getArguments());
+		if (key == null || StringUtils.isBlank(key.toString())) {
+			throw new ConcurrentException("并发异常,锁钥缺失~");
+		}
+
+		String name = StringUtils.isNotBlank(lock.name()) ? lock.name()
+				: method.getDeclaringClass().getSimpleName() + "." + method.getName();
+		ConcurrentLock concurrent = concurrentLock.getObject().key(name + ":" + key);
+		if (lock.mode() == LockMode.READ) {
+			concurrent.read();
+		} else if (lock.mode() == LockMode.WRITE) {
+			concurrent.write();
+		}
+		if (StringUtils.isNotBlank(lock.tips())) {
+			concurrent.tips(lock.tips());
+		}
+
+		try {
+			return concurrent.tryLock(lock.waitTime(), lock.timeout(), lock.unit()).execute(() -> {
+				try {
+					return invocation.proceed();
+				} catch (RuntimeException | Error ex) {
+					throw ex;
+				} catch (Throwable ex) {
+					throw new CheckedThrowable(ex);
+				}
+			});
+		} catch (CheckedThrowable ex) {
+			throw ex.getCause();
+		}
+	}
+
+	/**
+	 * 受检异常穿透执行单元
+	 **/
+	private static final class CheckedThrowable extends RuntimeException {
+
+		private static final long serialVersionUID = 4329157203415785092L;
+
+		CheckedThrowable(Throwable cause) {
+			super(cause);
+		}
+	}
+}
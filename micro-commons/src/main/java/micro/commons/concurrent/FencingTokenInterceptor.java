@@ -0,0 +1,151 @@
+package micro.commons.concurrent;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.SystemMetaObject;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import micro.commons.annotation.ThreadSafe;
+import micro.commons.exception.ConcurrentException;
+
+/**
+ * 栅栏令牌MyBatis插件. ConcurrentLock.fenced执行单元内的UPDATE语句改写为:
+ *
+ * <pre>
+ * UPDATE t SET ..., fence_token = ? WHERE (原条件) AND (fence_token IS NULL OR fence_token &lt;= ?) [ORDER BY ...] [LIMIT n]
+ * </pre>
+ *
+ * 顶层ORDER BY、LIMIT子句保持在栅栏条件之后.
+ * 表须包含栅栏令牌列(默认fence_token,BIGINT),锁过期后的陈旧持有者写入时受影响行数为0
+ *
+ * @author gewx
+ **/
+@Component
+@ThreadSafe
+@Intercepts({ @Signature(type = StatementHandler.class, method = "prepare", args = { Connection.class,
+		Integer.class }) })
+public class FencingTokenInterceptor implements Interceptor {
+
+	/**
+	 * 栅栏令牌附加参数名
+	 **/
+	private static final String FENCE_PARAMETER = "__fencingToken";
+
+	/**
+	 * 栅栏令牌列名
+	 **/
+	@Value("${micro.lock.fence-column:fence_token}")
+	private String fenceColumn;
+
+	@Override
+	public Object intercept(Invocation invocation) throws Throwable {
+		Long fence = ConcurrentLock.currentFence();
+		if (fence == null) {
+			return invocation.proceed();
+		}
+
+		MetaObject metaObject = SystemMetaObject.forObject(invocation.getTarget());
+		while (metaObject.hasGetter("h")) {
+			metaObject = SystemMetaObject.forObject(metaObject.getValue("h.target"));
+		}
+		MappedStatement mappedStatement = (MappedStatement) metaObject.getValue("delegate.mappedStatement");
+		if (mappedStatement.getSqlCommandType() != SqlCommandType.UPDATE) {
+			return invocation.proceed();
+		}
+
+		BoundSql boundSql = (BoundSql) metaObject.getValue("delegate.boundSql");
+		String sql = boundSql.getSql();
+		int where = indexOfKeyword(sql, 0, "WHERE");
+		if (where < 0) {
+			throw new ConcurrentException("并发异常,栅栏令牌校验要求UPDATE语句包含WHERE条件~");
+		}
+
+		int tail = indexOfKeyword(sql, where + "WHERE".length(), "ORDER", "LIMIT");
+		if (tail < 0) {
+			tail = sql.length();
+		}
+
+		List<ParameterMapping> mappings = new ArrayList<>(boundSql.getParameterMappings());
+		ParameterMapping fenceMapping = new ParameterMapping.Builder(mappedStatement.getConfiguration(),
+				FENCE_PARAMETER, Long.class).build();
+		mappings.add(countPlaceholders(sql, where), fenceMapping);
+		mappings.add(countPlaceholders(sql, tail) + 1, fenceMapping);
+		boundSql.setAdditionalParameter(FENCE_PARAMETER, fence);
+
+		String fencedSql = (sql.substring(0, where).trim() + ", " + fenceColumn + " = ? WHERE ("
+				+ sql.substring(where + "WHERE".length(), tail).trim() + ") AND (" + fenceColumn + " IS NULL OR "
+				+ fenceColumn + " <= ?) " + sql.substring(tail)).trim();
+		metaObject.setValue("delegate.boundSql.sql", fencedSql);
+		metaObject.setValue("delegate.boundSql.parameterMappings", mappings);
+		return invocation.proceed();
+	}
+
+	/**
+	 * 从指定位置起查找首个顶层(不在括号、引号内)关键字位置
+	 **/
+	private static int indexOfKeyword(String sql, int from, String... keywords) {
+		int depth = 0;
+		char quote = 0;
+		for (int i = from; i < sql.length(); i++) {
+			char c = sql.charAt(i);
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				}
+			} else if (c == '\'' || c == '"' || c == '`') {
+				quote = c;
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if (depth == 0 && (i == 0 || !isIdentifierPart(sql.charAt(i - 1)))) {
+				for (String keyword : keywords) {
+					int end = i + keyword.length();
+					if (sql.regionMatches(true, i, keyword, 0, keyword.length())
+							&& (end == sql.length() || !isIdentifierPart(sql.charAt(end)))) {
+						return i;
+					}
+				}
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isIdentifierPart(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+	}
+
+	/**
+	 * 统计指定位置之前的参数占位符数量
+	 **/
+	private static int countPlaceholders(String sql, int end) {
+		int count = 0;
+		char quote = 0;
+		for (int i = 0; i < end; i++) {
+			char c = sql.charAt(i);
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				}
+			} else if (c == '\'' || c == '"' || c == '`') {
+				quote = c;
+			} else if (c == '?') {
+				count++;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,272 @@
+package micro.commons.concurrent;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import micro.commons.annotation.ThreadSafe;
+
+/**
+ * 进程内分布式锁后端,语义与RedisLockBackend一致(令牌、租期、写等待标记、栅栏令牌),仅在本JVM内互斥.
+ * 锁状态存放于ConcurrentHashMap,单个锁钥的状态变更在compute内完成,仅锁定所在哈希桶; 过期状态在下次访问时清除.
+ * 批量加锁持有写锁在一个临界区内完成检查与加锁,单个加锁持有读锁,互不阻塞.
+ * 适用于单实例部署、测试环境以及Redis熔断期间的降级
+ *
+ * @author gewx
+ **/
+@Component
+@ThreadSafe
+public final class LocalLockBackend implements LockBackend {
+
+	/**
+	 * 锁状态, key: 锁钥或读写锁键
+	 **/
+	private final Map<String, State> states = new ConcurrentHashMap<>(256);
+
+	/**
+	 * 栅栏令牌计数器. REMARKS: 与Redis计数器相互独立,降级前后同一锁钥的令牌不保证单调
+	 **/
+	private final AtomicLong fence = new AtomicLong();
+
+	/**
+	 * 批量加锁互斥锁: 单个加锁共享,批量加锁独占
+	 **/
+	private final ReadWriteLock lockAllLock = new ReentrantReadWriteLock();
+
+	@Autowired
+	private LockReleaseSubscriber subscriber;
+
+	@Override
+	public long lock(String key, String token, long leaseMillis) {
+		long[] result = new long[1];
+		lockAllLock.readLock().lock();
+		try {
+			states.compute(key, (k, state) -> {
+				long now = System.currentTimeMillis();
+				if (state != null && !state.expired(now)) {
+					return state;
+				}
+				result[0] = fence.incrementAndGet();
+				return new State(token, now + leaseMillis);
+			});
+		} finally {
+			lockAllLock.readLock().unlock();
+		}
+		return result[0];
+	}
+
+	@Override
+	public long lockAll(List<String> keys, String token, long leaseMillis) {
+		lockAllLock.writeLock().lock();
+		try {
+			long now = System.currentTimeMillis();
+			for (int i = 0; i < keys.size(); i++) {
+				State state = states.get(keys.get(i));
+				if (state != null && !state.expired(now)) {
+					return -(i + 1);
+				}
+			}
+			for (String key : keys) {
+				states.put(key, new State(token, now + leaseMillis));
+			}
+			return fence.incrementAndGet();
+		} finally {
+			lockAllLock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public int unlock(List<String> keys, List<String> tokens) {
+		int released = 0;
+		for (int i = 0; i < keys.size(); i++) {
+			if (release(keys.get(i), tokens.get(i))) {
+				released++;
+			}
+		}
+		return released;
+	}
+
+	@Override
+	public void forceUnlock(String key) {
+		states.remove(key);
+		subscriber.signal(key);
+	}
+
+	@Override
+	public boolean renew(String key, String token, long leaseMillis) {
+		boolean[] renewed = new boolean[1];
+		states.computeIfPresent(key, (k, state) -> {
+			long now = System.currentTimeMillis();
+			if (state.expired(now)) {
+				return null;
+			}
+			if (token.equals(state.token)) {
+				state.expireAt = now + leaseMillis;
+				renewed[0] = true;
+			}
+			return state;
+		});
+		return renewed[0];
+	}
+
+	@Override
+	public boolean readLock(String key, String token, long leaseMillis) {
+		boolean[] locked = new boolean[1];
+		states.compute(key, (k, state) -> {
+			long now = System.currentTimeMillis();
+			if (state == null || state.expired(now)) {
+				state = new State(null, now);
+			}
+			if (state.token != null || state.writeIntent > now) {
+				return state;
+			}
+			state.readers.put(token, now + leaseMillis);
+			state.expireAt = Math.max(state.expireAt, now + leaseMillis);
+			locked[0] = true;
+			return state;
+		});
+		return locked[0];
+	}
+
+	@Override
+	public void readUnlock(String key, String token) {
+		states.computeIfPresent(key, (k, state) -> {
+			state.readers.remove(token);
+			return state.liveReaders(System.currentTimeMillis()) == 0 && state.token == null ? null : state;
+		});
+		subscriber.signal(key);
+	}
+
+	@Override
+	public long writeLock(String key, String token, long leaseMillis, long intentMillis) {
+		long[] result = new long[1];
+		states.compute(key, (k, state) -> {
+			long now = System.currentTimeMillis();
+			if (state == null || state.expired(now)) {
+				state = new State(null, now);
+			}
+			if (state.token == null && state.liveReaders(now) == 0) {
+				state.token = token;
+				state.writeIntent = 0;
+				state.expireAt = now + leaseMillis;
+				result[0] = fence.incrementAndGet();
+			} else if (intentMillis > 0) {
+				state.writeIntent = now + intentMillis;
+				state.expireAt = Math.max(state.expireAt, now + intentMillis);
+			}
+			return state.expired(now) ? null : state;
+		});
+		return result[0];
+	}
+
+	@Override
+	public boolean writeUnlock(String key, String token) {
+		boolean[] released = new boolean[1];
+		states.computeIfPresent(key, (k, state) -> {
+			if (!token.equals(state.token)) {
+				return state;
+			}
+			released[0] = true;
+			state.token = null;
+			long now = System.currentTimeMillis();
+			return state.liveReaders(now) == 0 && state.writeIntent <= now ? null : state;
+		});
+		if (released[0]) {
+			subscriber.signal(key);
+		}
+		return released[0];
+	}
+
+	@Override
+	public boolean renewReadWrite(String key, String token, long leaseMillis) {
+		boolean[] renewed = new boolean[1];
+		states.computeIfPresent(key, (k, state) -> {
+			long now = System.currentTimeMillis();
+			if (state.expired(now)) {
+				return null;
+			}
+			Long readerExpireAt = state.readers.get(token);
+			if (token.equals(state.token) || (readerExpireAt != null && readerExpireAt > now)) {
+				if (readerExpireAt != null) {
+					state.readers.put(token, now + leaseMillis);
+				}
+				state.expireAt = Math.max(state.expireAt, now + leaseMillis);
+				renewed[0] = true;
+			}
+			return state;
+		});
+		return renewed[0];
+	}
+
+	@Override
+	public boolean isRemote() {
+		return false;
+	}
+
+	private boolean release(String key, String token) {
+		boolean[] released = new boolean[1];
+		states.computeIfPresent(key, (k, state) -> {
+			if (!token.equals(state.token)) {
+				return state;
+			}
+			released[0] = true;
+			return null;
+		});
+		if (released[0]) {
+			subscriber.signal(key);
+		}
+		return released[0];
+	}
+
+	/**
+	 * 锁状态,仅在states.compute内读写
+	 **/
+	private static final class State {
+
+		/**
+		 * 互斥锁持有者令牌或读写锁写者令牌
+		 **/
+		private String token;
+
+		/**
+		 * 过期时间戳
+		 **/
+		private long expireAt;
+
+		/**
+		 * 读者租约, key: 读者令牌, value: 租约截止时间戳
+		 **/
+		private final Map<String, Long> readers = new HashMap<>(4);
+
+		/**
+		 * 写等待标记截止时间戳
+		 **/
+		private long writeIntent;
+
+		State(String token, long expireAt) {
+			this.token = token;
+			this.expireAt = expireAt;
+		}
+
+		boolean expired(long now) {
+			return expireAt <= now;
+		}
+
+		/**
+		 * 清除已过期读者
+		 *
+		 * @return 存活读者数量
+		 **/
+		int liveReaders(long now) {
+			readers.values().removeIf(readerExpireAt -> readerExpireAt <= now);
+			return readers.size();
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package micro.commons.concurrent;
+
+import java.util.List;
+
+/**
+ * 分布式锁存储后端SPI. 实现须保证单个操作的原子性,并在锁释放时唤醒LockReleaseSubscriber上的等待者;
+ * 本地重入、分段排队与看门狗续期由RedisLockEngine统一处理
+ *
+ * @author gewx
+ **/
+public interface LockBackend {
+
+	/**
+	 * 获取互斥锁
+	 *
+	 * @param key         锁钥
+	 * @param token       持有者令牌
+	 * @param leaseMillis 锁租期,单位:毫秒
+	 * @return 成功返回栅栏令牌,失败返回0
+	 **/
+	long lock(String key, String token, long leaseMillis);
+
+	/**
+	 * 原子获取一组互斥锁,全部成功或全部失败
+	 *
+	 * @param keys        锁钥集合,已排序
+	 * @param token       持有者令牌
+	 * @param leaseMillis 锁租期,单位:毫秒
+	 * @return 成功返回栅栏令牌,失败返回冲突锁钥序号(从1开始)的相反数
+	 **/
+	long lockAll(List<String> keys, String token, long leaseMillis);
+
+	/**
+	 * 按令牌批量释放互斥锁,令牌不一致的锁钥跳过
+	 *
+	 * @param keys   锁钥集合
+	 * @param tokens 与锁钥一一对应的持有者令牌
+	 * @return 释放数量
+	 **/
+	int unlock(List<String> keys, List<String> tokens);
+
+	/**
+	 * 不校验令牌强制释放互斥锁
+	 *
+	 * @param key 锁钥
+	 **/
+	void forceUnlock(String key);
+
+	/**
+	 * 续期互斥锁
+	 *
+	 * @param key         锁钥
+	 * @param token       持有者令牌
+	 * @param leaseMillis 锁租期,单位:毫秒
+	 * @return 令牌一致且续期成功返回true
+	 **/
+	boolean renew(String key, String token, long leaseMillis);
+
+	/**
+	 * 获取共享读锁,存在写者或未过期的写等待标记时失败. 每个读者按令牌单独登记租约,崩溃读者到期后不再阻塞写者
+	 *
+	 * @param key         读写锁键
+	 * @param token       读者令牌
+	 * @param leaseMillis 锁租期,单位:毫秒
+	 * @return 是否获取成功
+	 **/
+	boolean readLock(String key, String token, long leaseMillis);
+
+	/**
+	 * 按令牌释放共享读锁
+	 *
+	 * @param key   读写锁键
+	 * @param token 读者令牌
+	 **/
+	void readUnlock(String key, String token);
+
+	/**
+	 * 获取排他写锁,失败且写等待标记有效期大于0时登记写等待标记阻止新读者
+	 *
+	 * @param key          读写锁键
+	 * @param token        持有者令牌
+	 * @param leaseMillis  锁租期,单位:毫秒
+	 * @param intentMillis 写等待标记有效期,单位:毫秒
+	 * @return 成功返回栅栏令牌,失败返回0
+	 **/
+	long writeLock(String key, String token, long leaseMillis, long intentMillis);
+
+	/**
+	 * 按令牌释放排他写锁
+	 *
+	 * @param key   读写锁键
+	 * @param token 持有者令牌
+	 * @return 令牌一致且释放成功返回true
+	 **/
+	boolean writeUnlock(String key, String token);
+
+	/**
+	 * 续期读写锁,令牌为写者令牌或读者令牌
+	 *
+	 * @param key         读写锁键
+	 * @param token       持有者令牌
+	 * @param leaseMillis 锁租期,单位:毫秒
+	 * @return 续期成功返回true
+	 **/
+	boolean renewReadWrite(String key, String token, long leaseMillis);
+
+	/**
+	 * 释放通知是否经由Redis发布订阅传递
+	 *
+	 * @return 远程后端返回true,本地后端直接唤醒等待者返回false
+	 **/
+	boolean isRemote();
+}
@@ -0,0 +1,104 @@
+package micro.commons.concurrent;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import micro.commons.annotation.ThreadSafe;
+import micro.commons.exception.ConcurrentException;
+
+/**
+ * 分布式锁后端路由,按锁钥命名空间(首个冒号之前的前缀)选择后端:
+ *
+ * <pre>
+ * micro.lock.backend: redis              # 全局后端, local表示全部使用进程内后端(单实例部署、测试环境)
+ * micro.lock.local-namespaces: job,cache # 始终使用进程内后端的命名空间
+ * micro.lock.fallback-namespaces: "*"    # Redis熔断期间允许降级为进程内后端的命名空间, *表示全部
+ * </pre>
+ *
+ * 熔断期间未配置降级的命名空间直接失败,不再等待Redis超时. REMARKS: 降级后仅在本节点内互斥
+ *
+ * @author gewx
+ **/
+@Component
+@ThreadSafe
+public final class LockBackendRouter {
+
+	/**
+	 * 全部命名空间
+	 **/
+	private static final String ALL = "*";
+
+	@Value("${micro.lock.backend:redis}")
+	private String backend;
+
+	@Value("${micro.lock.local-namespaces:}")
+	private String[] localNamespaces;
+
+	@Value("${micro.lock.fallback-namespaces:}")
+	private String[] fallbackNamespaces;
+
+	@Autowired
+	private RedisLockBackend redisBackend;
+
+	@Autowired
+	private LocalLockBackend localBackend;
+
+	@Autowired
+	private LockCircuitBreaker breaker;
+
+	private Set<String> locals = Collections.emptySet();
+
+	private Set<String> fallbacks = Collections.emptySet();
+
+	@PostConstruct
+	public void init() {
+		locals = new HashSet<>(Arrays.asList(StringUtils.stripAll(localNamespaces)));
+		fallbacks = new HashSet<>(Arrays.asList(StringUtils.stripAll(fallbackNamespaces)));
+	}
+
+	/**
+	 * 选择锁钥所属后端
+	 *
+	 * @author gewx
+	 * @param key 锁钥
+	 * @return 锁后端
+	 * @throws ConcurrentException Redis熔断且命名空间未配置降级
+	 **/
+	public LockBackend route(String key) {
+		String namespace = StringUtils.substringBefore(key, ":");
+		if ("local".equalsIgnoreCase(backend) || locals.contains(namespace)) {
+			return localBackend;
+		}
+		if (breaker.allowRequest()) {
+			return redisBackend;
+		}
+		if (fallbacks.contains(ALL) || fallbacks.contains(namespace)) {
+			return localBackend;
+		}
+		throw new ConcurrentException("并发异常,分布式锁服务不可用~");
+	}
+
+	/**
+	 * 锁钥当前是否路由到Redis后端,仅查询熔断状态,不占用半开探测名额; 用于选择释放通知的订阅方式
+	 *
+	 * @author gewx
+	 * @param key 锁钥
+	 * @return Redis后端返回true
+	 **/
+	public boolean isRemote(String key) {
+		String namespace = StringUtils.substringBefore(key, ":");
+		if ("local".equalsIgnoreCase(backend) || locals.contains(namespace)) {
+			return false;
+		}
+		return !breaker.isOpen();
+	}
+}
@@ -0,0 +1,120 @@
+package micro.commons.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import micro.commons.annotation.ThreadSafe;
+import micro.commons.log.MicroLogger;
+
+/**
+ * 分布式锁Redis熔断器. 连续慢调用(超过耗时阈值)或异常达到阈值后熔断,熔断期间新的加锁请求不再访问Redis;
+ * 熔断时间结束后放行一次探测请求,成功则恢复,失败则重新熔断
+ *
+ * @author gewx
+ **/
+@Component
+@ThreadSafe
+public final class LockCircuitBreaker {
+
+	private static final MicroLogger LOGGER = new MicroLogger(LockCircuitBreaker.class);
+
+	/**
+	 * 慢调用耗时阈值,单位:毫秒
+	 **/
+	@Value("${micro.lock.breaker.slow-threshold:200}")
+	private long slowThreshold;
+
+	/**
+	 * 熔断所需连续慢调用或异常次数
+	 **/
+	@Value("${micro.lock.breaker.failure-threshold:5}")
+	private int failureThreshold;
+
+	/**
+	 * 熔断时间,单位:毫秒
+	 **/
+	@Value("${micro.lock.breaker.open-time:10000}")
+	private long openTime;
+
+	/**
+	 * 连续慢调用或异常次数
+	 **/
+	private final AtomicInteger failures = new AtomicInteger();
+
+	/**
+	 * 熔断截止时间戳,0表示未熔断
+	 **/
+	private volatile long openUntil;
+
+	/**
+	 * 熔断时间结束后是否已放行探测请求
+	 **/
+	private final AtomicBoolean probing = new AtomicBoolean();
+
+	/**
+	 * 是否允许访问Redis
+	 *
+	 * @author gewx
+	 * @return 未熔断或放行探测请求返回true
+	 **/
+	public boolean allowRequest() {
+		long until = openUntil;
+		if (until == 0) {
+			return true;
+		}
+		return System.currentTimeMillis() >= until && probing.compareAndSet(false, true);
+	}
+
+	/**
+	 * 是否处于熔断状态
+	 *
+	 * @author gewx
+	 * @return 熔断返回true
+	 **/
+	public boolean isOpen() {
+		return openUntil != 0;
+	}
+
+	/**
+	 * 记录一次Redis调用成功
+	 *
+	 * @author gewx
+	 * @param nanos 调用耗时,单位:纳秒
+	 * @return void
+	 **/
+	public void onSuccess(long nanos) {
+		if (TimeUnit.NANOSECONDS.toMillis(nanos) > slowThreshold) {
+			onFailure();
+			return;
+		}
+
+		failures.set(0);
+		if (openUntil != 0) {
+			openUntil = 0;
+			probing.set(false);
+			LOGGER.info("分布式锁Redis熔断恢复");
+		}
+	}
+
+	/**
+	 * 记录一次Redis慢调用或异常
+	 *
+	 * @author gewx
+	 * @return void
+	 **/
+	public void onFailure() {
+		if (probing.compareAndSet(true, false)) {
+			openUntil = System.currentTimeMillis() + openTime;
+			return;
+		}
+
+		if (failures.incrementAndGet() >= failureThreshold && openUntil == 0) {
+			openUntil = System.currentTimeMillis() + openTime;
+			LOGGER.warn("分布式锁Redis熔断, 连续慢调用或异常次数: " + failures.get() + ", 熔断时间: " + openTime + "ms");
+		}
+	}
+}
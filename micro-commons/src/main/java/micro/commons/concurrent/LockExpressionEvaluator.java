@@ -0,0 +1,43 @@
+package micro.commons.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.context.expression.AnnotatedElementKey;
+import org.springframework.context.expression.CachedExpressionEvaluator;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+
+import micro.commons.annotation.ThreadSafe;
+
+/**
+ * 分布式锁锁钥SpEL解析,表达式按方法预解析缓存
+ *
+ * @author gewx
+ **/
+@ThreadSafe
+final class LockExpressionEvaluator extends CachedExpressionEvaluator {
+
+	/**
+	 * 表达式缓存
+	 **/
+	private final Map<ExpressionKey, Expression> keyCache = new ConcurrentHashMap<>(64);
+
+	/**
+	 * 计算锁钥
+	 *
+	 * @param expression  SpEL表达式
+	 * @param method      目标方法
+	 * @param targetClass 目标类
+	 * @param target      目标对象
+	 * @param args        方法参数
+	 * @return 锁钥
+	 **/
+	Object key(String expression, Method method, Class<?> targetClass, Object target, Object[] args) {
+		EvaluationContext context = new MethodBasedEvaluationContext(target, method, args,
+				getParameterNameDiscoverer());
+		return getExpression(keyCache, new AnnotatedElementKey(method, targetClass), expression).getValue(context);
+	}
+}
@@ -0,0 +1,125 @@
+package micro.commons.concurrent;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Component;
+
+import micro.commons.annotation.ThreadSafe;
+import micro.commons.metrics.HeavyHitters;
+import micro.commons.metrics.LatencyHistogram;
+
+/**
+ * 分布式锁指标,按锁钥前缀(首个':'之前部分)统计获取次数、失败次数、获取等待耗时与持有耗时,并近似统计热点锁钥
+ *
+ * @author gewx
+ **/
+@Component
+@ThreadSafe
+public final class LockMetrics {
+
+	/**
+	 * 最大统计前缀数量,超出部分归入OTHER
+	 **/
+	private static final int MAX_PREFIXES = 256;
+
+	/**
+	 * 超出统计上限的前缀
+	 **/
+	private static final String OTHER = "other";
+
+	/**
+	 * 热点锁钥跟踪容量
+	 **/
+	private static final int HOT_KEY_CAPACITY = 128;
+
+	private final Map<String, LockStats> stats = new ConcurrentHashMap<>(64);
+
+	private final HeavyHitters hotKeys = new HeavyHitters(HOT_KEY_CAPACITY);
+
+	/**
+	 * 记录一次获取锁
+	 *
+	 * @author gewx
+	 * @param keys      锁钥集合
+	 * @param waitNanos 获取耗时,单位:纳秒
+	 * @param locked    是否获取成功
+	 * @return void
+	 **/
+	public void acquire(List<String> keys, long waitNanos, boolean locked) {
+		LockStats lockStats = stats(keys.get(0));
+		if (locked) {
+			lockStats.acquired.increment();
+		} else {
+			lockStats.failed.increment();
+		}
+		lockStats.wait.record(waitNanos);
+		keys.forEach(hotKeys::offer);
+	}
+
+	/**
+	 * 记录一次释放锁
+	 *
+	 * @author gewx
+	 * @param keys      锁钥集合
+	 * @param holdNanos 持有耗时,单位:纳秒
+	 * @return void
+	 **/
+	public void release(List<String> keys, long holdNanos) {
+		stats(keys.get(0)).hold.record(holdNanos);
+	}
+
+	/**
+	 * 指标快照
+	 *
+	 * @author gewx
+	 * @param top 热点锁钥数量
+	 * @return 各前缀指标及热点锁钥
+	 **/
+	public Map<String, Object> snapshot(int top) {
+		Map<String, Object> prefixes = new LinkedHashMap<>(stats.size() * 2);
+		stats.forEach((prefix, lockStats) -> {
+			Map<String, Object> map = new LinkedHashMap<>(8);
+			map.put("acquired", lockStats.acquired.sum());
+			map.put("failed", lockStats.failed.sum());
+			map.put("waitMicros", lockStats.wait.snapshot());
+			map.put("holdMicros", lockStats.hold.snapshot());
+			prefixes.put(prefix, map);
+		});
+
+		Map<String, Object> map = new LinkedHashMap<>(4);
+		map.put("prefixes", prefixes);
+		map.put("hotKeys", hotKeys.top(top));
+		return map;
+	}
+
+	private LockStats stats(String key) {
+		String prefix = StringUtils.substringBefore(key, ":");
+		LockStats lockStats = stats.get(prefix);
+		if (lockStats != null) {
+			return lockStats;
+		}
+		if (stats.size() >= MAX_PREFIXES) {
+			prefix = OTHER;
+		}
+		return stats.computeIfAbsent(prefix, k -> new LockStats());
+	}
+
+	/**
+	 * 前缀维度锁指标
+	 **/
+	private static final class LockStats {
+
+		private final LongAdder acquired = new LongAdder();
+
+		private final LongAdder failed = new LongAdder();
+
+		private final LatencyHistogram wait = new LatencyHistogram();
+
+		private final LatencyHistogram hold = new LatencyHistogram();
+	}
+}
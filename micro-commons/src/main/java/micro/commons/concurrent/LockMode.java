@@ -0,0 +1,24 @@
+package micro.commons.concurrent;
+
+/**
+ * 分布式锁模式
+ *
+ * @author gewx
+ **/
+public enum LockMode {
+
+	/**
+	 * 互斥锁
+	 **/
+	EXCLUSIVE,
+
+	/**
+	 * 共享读锁,多个读者可同时持有,与写锁互斥
+	 **/
+	READ,
+
+	/**
+	 * 排他写锁,与读锁、写锁互斥. 写者等待期间阻止新读者进入,避免写饥饿
+	 **/
+	WRITE
+}
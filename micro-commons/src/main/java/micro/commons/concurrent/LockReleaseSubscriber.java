@@ -0,0 +1,173 @@
+package micro.commons.concurrent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import micro.commons.annotation.ThreadSafe;
+import micro.commons.log.MicroLogger;
+
+/**
+ * 分布式锁释放通知订阅. 等待者按锁钥订阅释放频道,锁释放时被唤醒重试,减少轮询Redis;
+ * 同一锁钥在本节点只订阅一次,最后一个等待者退出时取消订阅. 频道订阅在ConcurrentHashMap.compute之外执行,
+ * 且订阅容器首次订阅为异步完成,订阅生效前发出的释放消息可能错过,由等待方的随机抖动兜底轮询补偿
+ *
+ * @author gewx
+ **/
+@Component
+@ThreadSafe
+public final class LockReleaseSubscriber {
+
+	private static final MicroLogger LOGGER = new MicroLogger(LockReleaseSubscriber.class);
+
+	/**
+	 * 锁释放频道前缀
+	 **/
+	static final String CHANNEL_PREFIX = "micro:lock:release:";
+
+	/**
+	 * 订阅容器, key: 锁钥
+	 **/
+	private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>(64);
+
+	@Autowired
+	@Qualifier(DistributedLockConfiguration.RELEASE_CONTAINER)
+	private RedisMessageListenerContainer container;
+
+	/**
+	 * 获取锁钥对应的释放频道
+	 *
+	 * @author gewx
+	 * @param key 锁钥
+	 * @return 频道名称
+	 **/
+	public static String channel(String key) {
+		return CHANNEL_PREFIX + key;
+	}
+
+	/**
+	 * 订阅锁释放通知. 应在首次尝试获取锁之前订阅以尽量不错过释放消息,但不保证订阅已生效,等待方须配合兜底轮询
+	 *
+	 * @author gewx
+	 * @param key    锁钥
+	 * @param remote 是否订阅Redis释放频道,本地后端的释放通知经由signal直接传递
+	 * @return 订阅对象
+	 **/
+	public Subscription subscribe(String key, boolean remote) {
+		boolean[] listen = new boolean[1];
+		Subscription subscription = subscriptions.compute(key, (k, current) -> {
+			if (current == null) {
+				current = new Subscription(k);
+			}
+			if (remote && !current.listening) {
+				// 仅标记,频道订阅为网络调用,不在compute内执行
+				current.listening = true;
+				listen[0] = true;
+			}
+			current.refs++;
+			return current;
+		});
+
+		// 当前线程持有引用,订阅完成前不会被取消订阅
+		if (listen[0]) {
+			try {
+				container.addMessageListener(subscription, new ChannelTopic(channel(key)));
+			} catch (RuntimeException ex) {
+				LOGGER.warn("分布式锁释放频道订阅异常,退化为轮询, key: " + key + ", ex: " + ex.getMessage());
+			}
+		}
+		return subscription;
+	}
+
+	/**
+	 * 本地发送锁释放通知,唤醒本节点的等待者
+	 *
+	 * @author gewx
+	 * @param key 锁钥
+	 * @return void
+	 **/
+	public void signal(String key) {
+		Subscription subscription = subscriptions.get(key);
+		if (subscription != null) {
+			subscription.onMessage(null, null);
+		}
+	}
+
+	/**
+	 * 取消订阅,引用计数归零时取消频道订阅
+	 *
+	 * @author gewx
+	 * @param subscription 订阅对象
+	 * @return void
+	 **/
+	public void unsubscribe(Subscription subscription) {
+		boolean[] unlisten = new boolean[1];
+		subscriptions.computeIfPresent(subscription.key, (k, current) -> {
+			if (--current.refs > 0) {
+				return current;
+			}
+			unlisten[0] = current.listening;
+			return null;
+		});
+
+		if (unlisten[0]) {
+			try {
+				container.removeMessageListener(subscription, new ChannelTopic(channel(subscription.key)));
+			} catch (RuntimeException ex) {
+				LOGGER.warn("分布式锁释放频道取消订阅异常, key: " + subscription.key + ", ex: " + ex.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * 锁释放订阅
+	 **/
+	public static final class Subscription implements MessageListener {
+
+		private final String key;
+
+		private final Semaphore signal = new Semaphore(0);
+
+		/**
+		 * 等待者数量,仅在subscriptions.compute内修改
+		 **/
+		private int refs;
+
+		/**
+		 * 是否已订阅Redis释放频道,仅在subscriptions.compute内修改
+		 **/
+		private boolean listening;
+
+		Subscription(String key) {
+			this.key = key;
+		}
+
+		@Override
+		public void onMessage(Message message, byte[] pattern) {
+			if (signal.availablePermits() == 0) {
+				signal.release();
+			}
+		}
+
+		/**
+		 * 等待锁释放通知
+		 *
+		 * @author gewx
+		 * @param timeout 最长等待时间,单位:毫秒
+		 * @return 收到通知返回true,超时返回false
+		 * @throws InterruptedException
+		 **/
+		public boolean await(long timeout) throws InterruptedException {
+			return signal.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package micro.commons.concurrent;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.stereotype.Component;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import micro.commons.annotation.ThreadSafe;
+import micro.commons.log.MicroLogger;
+
+/**
+ * 分布式锁看门狗,锁执行单元未结束前按租期1/3间隔自动续期. 全部锁共享同一个时间轮调度线程,
+ * 续期调用由独立的续期线程池执行,单次慢调用不阻塞时间轮,也不推迟其他锁的续期
+ *
+ * @author gewx
+ **/
+@Component
+@ThreadSafe
+public final class LockWatchdog {
+
+	private static final MicroLogger LOGGER = new MicroLogger(LockWatchdog.class);
+
+	/**
+	 * 时间轮刻度,单位:毫秒
+	 **/
+	private static final long TICK_DURATION = 100;
+
+	/**
+	 * 时间轮槽数
+	 **/
+	private static final int TICKS_PER_WHEEL = 512;
+
+	/**
+	 * 最小续期间隔,单位:毫秒
+	 **/
+	private static final long MIN_INTERVAL = 200;
+
+	/**
+	 * 续期线程数
+	 **/
+	private static final int RENEW_THREADS = 4;
+
+	/**
+	 * 续期队列容量,队满时本次续期推迟到下一刻度
+	 **/
+	private static final int RENEW_QUEUE = 4096;
+
+	private final HashedWheelTimer timer = new HashedWheelTimer(new DefaultThreadFactory("MICRO_LOCK_WATCHDOG", true),
+			TICK_DURATION, TimeUnit.MILLISECONDS, TICKS_PER_WHEEL);
+
+	private final ExecutorService renewers = new ThreadPoolExecutor(RENEW_THREADS, RENEW_THREADS, 0,
+			TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(RENEW_QUEUE), new DefaultThreadFactory("MICRO_LOCK_RENEW", true));
+
+	/**
+	 * 登记锁租约,开始自动续期
+	 *
+	 * @author gewx
+	 * @param key         锁钥
+	 * @param token       持有者令牌
+	 * @param leaseMillis 锁租期,单位:毫秒
+	 * @param renewer     续期动作
+	 * @return 锁租约
+	 **/
+	public Lease watch(String key, String token, long leaseMillis, LeaseRenewer renewer) {
+		Lease lease = new Lease(key, token, leaseMillis, renewer);
+		schedule(lease);
+		return lease;
+	}
+
+	@PreDestroy
+	public void destroy() {
+		timer.stop();
+		renewers.shutdown();
+	}
+
+	private void schedule(Lease lease) {
+		schedule(lease, Math.max(lease.leaseMillis / 3, MIN_INTERVAL));
+	}
+
+	private void schedule(Lease lease, long delay) {
+		if (lease.cancelled) {
+			return;
+		}
+		lease.timeout = timer.newTimeout(t -> submit(lease), delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 时间轮线程仅提交续期,不执行Redis调用
+	 **/
+	private void submit(Lease lease) {
+		try {
+			renewers.execute(() -> renew(lease));
+		} catch (RejectedExecutionException ex) {
+			LOGGER.warn("分布式锁续期队列已满,推迟续期, key: " + lease.key);
+			schedule(lease, TICK_DURATION);
+		}
+	}
+
+	private void renew(Lease lease) {
+		if (lease.cancelled) {
+			return;
+		}
+
+		try {
+			if (!lease.renewer.renew(lease.key, lease.token, lease.leaseMillis)) {
+				LOGGER.warn("分布式锁续期失败,锁已过期或被其他持有者获取, key: " + lease.key);
+				return;
+			}
+		} catch (Exception ex) {
+			LOGGER.warn("分布式锁续期异常, key: " + lease.key + ", ex: " + ex.getMessage());
+		}
+		schedule(lease);
+	}
+
+	/**
+	 * 续期动作
+	 **/
+	@FunctionalInterface
+	public interface LeaseRenewer {
+
+		/**
+		 * 续期锁
+		 *
+		 * @param key         锁钥
+		 * @param token       持有者令牌
+		 * @param leaseMillis 锁租期,单位:毫秒
+		 * @return 令牌仍一致且续期成功返回true
+		 **/
+		boolean renew(String key, String token, long leaseMillis);
+	}
+
+	/**
+	 * 锁租约
+	 **/
+	public static final class Lease {
+
+		private final String key;
+
+		private final String token;
+
+		private final long leaseMillis;
+
+		private final LeaseRenewer renewer;
+
+		private volatile boolean cancelled;
+
+		private volatile Timeout timeout;
+
+		Lease(String key, String token, long leaseMillis, LeaseRenewer renewer) {
+			this.key = key;
+			this.token = token;
+			this.leaseMillis = leaseMillis;
+			this.renewer = renewer;
+		}
+
+		/**
+		 * 取消续期
+		 *
+		 * @author gewx
+		 * @return void
+		 **/
+		public void cancel() {
+			cancelled = true;
+			Timeout t = timeout;
+			if (t != null) {
+				t.cancel();
+			}
+		}
+	}
+}
@@ -0,0 +1,223 @@
+package micro.commons.concurrent;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import micro.commons.annotation.ThreadSafe;
+
+/**
+ * Redis分布式锁后端. 锁值为持有者令牌,全部操作由Lua脚本原子完成,释放时发布释放通知;
+ * 加锁脚本同时自增全局计数器发放栅栏令牌. 每次调用的耗时与异常上报LockCircuitBreaker.
+ * REMARKS: 栅栏令牌计数器通过ARGV传入,仅支持单机/主从Redis
+ *
+ * @author gewx
+ **/
+@Component
+@ThreadSafe
+public final class RedisLockBackend implements LockBackend {
+
+	/**
+	 * 栅栏令牌计数器,全局单调递增
+	 **/
+	private static final String FENCE_KEY = "micro:lock:fence";
+
+	/**
+	 * 获取锁脚本: 加锁成功返回栅栏令牌,失败返回0. ARGV[1]为栅栏令牌计数器
+	 **/
+	private static final RedisScript<Long> LOCK_SCRIPT = new DefaultRedisScript<>(
+			"if redis.call('set', KEYS[1], ARGV[2], 'PX', ARGV[3], 'NX') then return redis.call('incr', ARGV[1]) end; "
+					+ "return 0",
+			Long.class);
+
+	/**
+	 * 批量获取锁脚本: 任一锁钥已被占用则返回其序号的相反数,否则全部加锁并返回栅栏令牌. ARGV[1]为栅栏令牌计数器
+	 **/
+	private static final RedisScript<Long> LOCK_ALL_SCRIPT = new DefaultRedisScript<>(
+			"for i = 1, #KEYS do if redis.call('exists', KEYS[i]) == 1 then return -i end end; "
+					+ "for i = 1, #KEYS do redis.call('set', KEYS[i], ARGV[2], 'PX', ARGV[3]) end; "
+					+ "return redis.call('incr', ARGV[1])",
+			Long.class);
+
+	/**
+	 * 释放锁脚本: 逐个比较令牌,一致才删除并发布释放通知,返回释放数量. ARGV[1]为频道前缀,ARGV[i+1]为KEYS[i]的令牌
+	 **/
+	private static final RedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+			"local released = 0; for i = 1, #KEYS do if redis.call('get', KEYS[i]) == ARGV[i + 1] then "
+					+ "redis.call('del', KEYS[i]); redis.call('publish', ARGV[1] .. KEYS[i], ARGV[i + 1]); "
+					+ "released = released + 1 end end; return released",
+			Long.class);
+
+	/**
+	 * 续期锁脚本: 令牌一致才续期
+	 **/
+	private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+			"if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end",
+			Long.class);
+
+	/**
+	 * 读者清理函数: 读者登记为字段"r:令牌",值为租约截止时间戳; 删除已过期读者并返回存活读者数量
+	 **/
+	private static final String PRUNE_READERS = "local function readers(key, now) local n = 0; "
+			+ "local fields = redis.call('hgetall', key); for i = 1, #fields, 2 do "
+			+ "if string.sub(fields[i], 1, 2) == 'r:' then if tonumber(fields[i + 1]) <= now then redis.call('hdel', key, fields[i]) "
+			+ "else n = n + 1 end end end; return n end; ";
+
+	/**
+	 * 读锁脚本: 无写者且无未过期的写等待标记时登记读者. ARGV[1]为读者令牌,ARGV[2]为租期,ARGV[3]为当前时间戳
+	 **/
+	private static final RedisScript<Long> READ_LOCK_SCRIPT = new DefaultRedisScript<>(
+			"if redis.call('hexists', KEYS[1], 'writer') == 1 then return 0 end; "
+					+ "if tonumber(redis.call('hget', KEYS[1], 'wwait') or '0') > tonumber(ARGV[3]) then return 0 end; "
+					+ "redis.call('hset', KEYS[1], 'r:' .. ARGV[1], tonumber(ARGV[3]) + tonumber(ARGV[2])); "
+					+ "if redis.call('pttl', KEYS[1]) < tonumber(ARGV[2]) then redis.call('pexpire', KEYS[1], ARGV[2]) end; "
+					+ "return 1",
+			Long.class);
+
+	/**
+	 * 释放读锁脚本: 删除读者并清理过期读者,无存活读者时发布释放通知. ARGV[1]为读者令牌,ARGV[2]为释放频道,ARGV[3]为当前时间戳
+	 **/
+	private static final RedisScript<Long> READ_UNLOCK_SCRIPT = new DefaultRedisScript<>(PRUNE_READERS
+			+ "redis.call('hdel', KEYS[1], 'r:' .. ARGV[1]); local n = readers(KEYS[1], tonumber(ARGV[3])); "
+			+ "if n == 0 then if redis.call('hlen', KEYS[1]) == 0 then redis.call('del', KEYS[1]) end; "
+			+ "redis.call('publish', ARGV[2], 'read') end; return n",
+			Long.class);
+
+	/**
+	 * 写锁脚本: 无写者且无存活读者时写入写者令牌并返回栅栏令牌; 否则登记写等待标记阻止新读者并返回0. 已过期读者先行清理.
+	 * ARGV[1]为令牌,ARGV[2]为租期,ARGV[3]为当前时间戳,ARGV[4]为写等待标记有效期,ARGV[5]为栅栏令牌计数器
+	 **/
+	private static final RedisScript<Long> WRITE_LOCK_SCRIPT = new DefaultRedisScript<>(PRUNE_READERS
+			+ "if redis.call('hexists', KEYS[1], 'writer') == 0 and readers(KEYS[1], tonumber(ARGV[3])) == 0 then "
+			+ "redis.call('hset', KEYS[1], 'writer', ARGV[1]); redis.call('hdel', KEYS[1], 'wwait'); "
+			+ "redis.call('pexpire', KEYS[1], ARGV[2]); return redis.call('incr', ARGV[5]) end; "
+			+ "if tonumber(ARGV[4]) > 0 then redis.call('hset', KEYS[1], 'wwait', tonumber(ARGV[3]) + tonumber(ARGV[4])); "
+			+ "if redis.call('pttl', KEYS[1]) < tonumber(ARGV[4]) then redis.call('pexpire', KEYS[1], ARGV[4]) end end; "
+			+ "return 0",
+			Long.class);
+
+	/**
+	 * 释放写锁脚本: 令牌一致才删除写者并发布释放通知. ARGV[1]为令牌,ARGV[2]为释放频道
+	 **/
+	private static final RedisScript<Long> WRITE_UNLOCK_SCRIPT = new DefaultRedisScript<>(
+			"if redis.call('hget', KEYS[1], 'writer') ~= ARGV[1] then return 0 end; "
+					+ "redis.call('hdel', KEYS[1], 'writer'); "
+					+ "if redis.call('hlen', KEYS[1]) == 0 then redis.call('del', KEYS[1]) end; "
+					+ "redis.call('publish', ARGV[2], 'write'); return 1",
+			Long.class);
+
+	/**
+	 * 读写锁续期脚本: 写者令牌一致或读者未过期才续期,读者同时顺延其租约截止时间.
+	 * ARGV[1]为令牌,ARGV[2]为租期,ARGV[3]为当前时间戳
+	 **/
+	private static final RedisScript<Long> RW_RENEW_SCRIPT = new DefaultRedisScript<>(
+			"if redis.call('hget', KEYS[1], 'writer') ~= ARGV[1] then "
+					+ "local expireAt = redis.call('hget', KEYS[1], 'r:' .. ARGV[1]); "
+					+ "if not expireAt or tonumber(expireAt) <= tonumber(ARGV[3]) then return 0 end; "
+					+ "redis.call('hset', KEYS[1], 'r:' .. ARGV[1], tonumber(ARGV[3]) + tonumber(ARGV[2])) end; "
+					+ "if redis.call('pttl', KEYS[1]) < tonumber(ARGV[2]) then redis.call('pexpire', KEYS[1], ARGV[2]) end; "
+					+ "return 1",
+			Long.class);
+
+	@Autowired
+	private RedisTemplate<String, String> redisTemplate;
+
+	@Autowired
+	private LockCircuitBreaker breaker;
+
+	@Override
+	public long lock(String key, String token, long leaseMillis) {
+		return execute(LOCK_SCRIPT, Collections.singletonList(key), FENCE_KEY, token, String.valueOf(leaseMillis));
+	}
+
+	@Override
+	public long lockAll(List<String> keys, String token, long leaseMillis) {
+		return execute(LOCK_ALL_SCRIPT, keys, FENCE_KEY, token, String.valueOf(leaseMillis));
+	}
+
+	@Override
+	public int unlock(List<String> keys, List<String> tokens) {
+		Object[] args = new Object[keys.size() + 1];
+		args[0] = LockReleaseSubscriber.CHANNEL_PREFIX;
+		for (int i = 0; i < tokens.size(); i++) {
+			args[i + 1] = tokens.get(i);
+		}
+		return (int) execute(UNLOCK_SCRIPT, keys, args);
+	}
+
+	@Override
+	public void forceUnlock(String key) {
+		long start = System.nanoTime();
+		try {
+			redisTemplate.delete(key);
+			redisTemplate.convertAndSend(LockReleaseSubscriber.channel(key), "");
+			breaker.onSuccess(System.nanoTime() - start);
+		} catch (RuntimeException ex) {
+			breaker.onFailure();
+			throw ex;
+		}
+	}
+
+	@Override
+	public boolean renew(String key, String token, long leaseMillis) {
+		return execute(RENEW_SCRIPT, Collections.singletonList(key), token, String.valueOf(leaseMillis)) == 1;
+	}
+
+	@Override
+	public boolean readLock(String key, String token, long leaseMillis) {
+		return execute(READ_LOCK_SCRIPT, Collections.singletonList(key), token, String.valueOf(leaseMillis),
+				String.valueOf(System.currentTimeMillis())) == 1;
+	}
+
+	@Override
+	public void readUnlock(String key, String token) {
+		execute(READ_UNLOCK_SCRIPT, Collections.singletonList(key), token, LockReleaseSubscriber.channel(key),
+				String.valueOf(System.currentTimeMillis()));
+	}
+
+	@Override
+	public long writeLock(String key, String token, long leaseMillis, long intentMillis) {
+		return execute(WRITE_LOCK_SCRIPT, Collections.singletonList(key), token, String.valueOf(leaseMillis),
+				String.valueOf(System.currentTimeMillis()), String.valueOf(intentMillis), FENCE_KEY);
+	}
+
+	@Override
+	public boolean writeUnlock(String key, String token) {
+		return execute(WRITE_UNLOCK_SCRIPT, Collections.singletonList(key), token,
+				LockReleaseSubscriber.channel(key)) == 1;
+	}
+
+	@Override
+	public boolean renewReadWrite(String key, String token, long leaseMillis) {
+		return execute(RW_RENEW_SCRIPT, Collections.singletonList(key), token, String.valueOf(leaseMillis),
+				String.valueOf(System.currentTimeMillis())) == 1;
+	}
+
+	@Override
+	public boolean isRemote() {
+		return true;
+	}
+
+	/**
+	 * 执行脚本并上报熔断器
+	 *
+	 * @return 脚本结果,空结果按0处理
+	 **/
+	private long execute(RedisScript<Long> script, List<String> keys, Object... args) {
+		long start = System.nanoTime();
+		Long result;
+		try {
+			result = redisTemplate.execute(script, keys, args);
+		} catch (RuntimeException ex) {
+			breaker.onFailure();
+			throw ex;
+		}
+		breaker.onSuccess(System.nanoTime() - start);
+		return result == null ? 0 : result.longValue();
+	}
+}
@@ -0,0 +1,643 @@
+package micro.commons.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import micro.commons.annotation.ThreadSafe;
+import micro.commons.log.MicroLogger;
+
+/**
+ * 分布式锁引擎. 锁值为持有者令牌,释放时原子比较删除,避免误删他人持有的锁;
+ * 同一线程对同一锁钥支持重入(本地持有计数,仅首次获取与最终释放访问后端); 持有期间由看门狗自动续期;
+ * 阻塞等待模式下订阅锁释放通知被动唤醒,辅以随机抖动的兜底轮询; 访问后端前先获取本地分段锁,Redis压力与节点数而非线程数成正比;
+ * 加锁同时发放栅栏令牌. 存储后端由LockBackendRouter按命名空间选择,释放与续期始终使用获取时的后端
+ *
+ * @author gewx
+ **/
+@Component
+@ThreadSafe
+public final class RedisLockEngine {
+
+	private static final MicroLogger LOGGER = new MicroLogger(RedisLockEngine.class);
+
+	/**
+	 * 兜底轮询间隔下限,单位:毫秒
+	 **/
+	private static final long MIN_POLL_INTERVAL = 50;
+
+	/**
+	 * 兜底轮询间隔上限,单位:毫秒
+	 **/
+	private static final long MAX_POLL_INTERVAL = 300;
+
+	/**
+	 * 本地分段锁数量,须为2的幂
+	 **/
+	private static final int STRIPES = 256;
+
+	/**
+	 * 未持有本地分段锁
+	 **/
+	private static final int NO_STRIPE = -1;
+
+	/**
+	 * 读写锁Redis键后缀
+	 **/
+	private static final String RW_SUFFIX = ":rw";
+
+	/**
+	 * 写等待标记有效期,须大于兜底轮询间隔上限,单位:毫秒
+	 **/
+	private static final long WRITE_INTENT_TIME = 1000;
+
+	/**
+	 * 当前线程持有的锁, key: 持有标识(互斥锁为锁钥,读写锁见holdKey)
+	 **/
+	private static final ThreadLocal<Map<String, Hold>> HOLDS = ThreadLocal.withInitial(() -> new HashMap<>(8));
+
+	/**
+	 * 本地分段锁,同一节点同一锁钥的线程先在本地排队,仅一个线程访问Redis
+	 **/
+	private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+	/**
+	 * 本地分段锁当前持有的锁钥,用于区分同钥竞争与哈希冲突
+	 **/
+	private final AtomicReferenceArray<String> stripeKeys = new AtomicReferenceArray<>(STRIPES);
+
+	{
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new ReentrantLock();
+		}
+	}
+
+	@Autowired
+	private LockBackendRouter router;
+
+	@Autowired
+	private LockWatchdog watchdog;
+
+	@Autowired
+	private LockReleaseSubscriber subscriber;
+
+	/**
+	 * 尝试获取锁,当前线程已持有时重入计数加一
+	 *
+	 * @author gewx
+	 * @param key       锁钥
+	 * @param leaseTime 锁租期
+	 * @param unit      时间单位
+	 * @return 是否获取成功
+	 **/
+	public boolean tryLock(String key, long leaseTime, TimeUnit unit) {
+		if (reenter(key)) {
+			return true;
+		}
+
+		int stripe = stripe(key);
+		if (!stripes[stripe].tryLock()) {
+			if (key.equals(stripeKeys.get(stripe))) {
+				// 本节点其他线程正持有同一锁钥,无需访问Redis
+				return false;
+			}
+			// 分段哈希冲突,绕过本地分段锁直接竞争
+			return acquire(key, leaseTime, unit, NO_STRIPE);
+		}
+
+		boolean locked = false;
+		try {
+			stripeKeys.compareAndSet(stripe, null, key);
+			locked = acquire(key, leaseTime, unit, stripe);
+			return locked;
+		} finally {
+			if (!locked) {
+				unlockStripe(stripe, key);
+			}
+		}
+	}
+
+	/**
+	 * 尝试获取锁,锁被占用时在等待时间内阻塞等待释放通知. 本节点同一锁钥的等待者先在本地分段锁排队,每个节点仅一个线程访问Redis
+	 *
+	 * @author gewx
+	 * @param key       锁钥
+	 * @param waitTime  最长等待时间
+	 * @param leaseTime 锁租期
+	 * @param unit      时间单位
+	 * @return 是否获取成功,等待超时或线程中断返回false
+	 **/
+	public boolean tryLock(String key, long waitTime, long leaseTime, TimeUnit unit) {
+		if (reenter(key)) {
+			return true;
+		}
+
+		long deadline = System.currentTimeMillis() + unit.toMillis(waitTime);
+		int stripe = stripe(key);
+		try {
+			stripe = queueStripe(key, stripe, deadline);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+
+		if (stripe == NO_STRIPE) {
+			// 分段哈希冲突,绕过本地分段锁直接竞争
+			return acquire(key, leaseTime, unit, NO_STRIPE)
+					|| await(key, deadline, () -> acquire(key, leaseTime, unit, NO_STRIPE));
+		}
+
+		boolean locked = false;
+		int taken = stripe;
+		try {
+			stripeKeys.compareAndSet(taken, null, key);
+			locked = acquire(key, leaseTime, unit, taken)
+					|| await(key, deadline, () -> acquire(key, leaseTime, unit, taken));
+			return locked;
+		} finally {
+			if (!locked) {
+				unlockStripe(taken, key);
+			}
+		}
+	}
+
+	/**
+	 * 仅当本地分段锁被同一锁钥持有时在分段锁上排队; 分段锁被其他锁钥持有(哈希冲突)时不等待
+	 *
+	 * @return 获取到的分段锁,哈希冲突返回NO_STRIPE
+	 * @throws InterruptedException 线程中断
+	 **/
+	private int queueStripe(String key, int stripe, long deadline) throws InterruptedException {
+		while (true) {
+			if (stripes[stripe].tryLock()) {
+				return stripe;
+			}
+			if (!key.equals(stripeKeys.get(stripe))) {
+				return NO_STRIPE;
+			}
+
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				return NO_STRIPE;
+			}
+			// 分段锁释放后可能被其他锁钥占用,限时等待后重新判断
+			if (stripes[stripe].tryLock(Math.min(remaining, MAX_POLL_INTERVAL), TimeUnit.MILLISECONDS)) {
+				return stripe;
+			}
+		}
+	}
+
+	private boolean await(String key, long deadline, BooleanSupplier attempt) {
+		LockReleaseSubscriber.Subscription subscription = subscriber.subscribe(key, router.isRemote(key));
+		try {
+			while (true) {
+				if (attempt.getAsBoolean()) {
+					return true;
+				}
+
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					return false;
+				}
+
+				long poll = ThreadLocalRandom.current().nextLong(MIN_POLL_INTERVAL, MAX_POLL_INTERVAL);
+				subscription.await(Math.min(remaining, poll));
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			subscriber.unsubscribe(subscription);
+		}
+	}
+
+	/**
+	 * 获取读写锁的持有标识,用于释放
+	 *
+	 * @author gewx
+	 * @param key  锁钥
+	 * @param mode 锁模式
+	 * @return 持有标识
+	 **/
+	public static String holdKey(String key, LockMode mode) {
+		return mode == LockMode.EXCLUSIVE ? key : key + RW_SUFFIX + ":" + mode.name();
+	}
+
+	/**
+	 * 尝试获取共享读锁. 当前线程已持有同一锁钥的写锁时直接授予(锁降级)
+	 *
+	 * @author gewx
+	 * @param key       锁钥
+	 * @param waitTime  最长等待时间,0表示获取失败立即返回
+	 * @param leaseTime 锁租期
+	 * @param unit      时间单位
+	 * @return 是否获取成功
+	 **/
+	public boolean tryReadLock(String key, long waitTime, long leaseTime, TimeUnit unit) {
+		String holdKey = holdKey(key, LockMode.READ);
+		if (reenter(holdKey)) {
+			return true;
+		}
+
+		Map<String, Hold> holds = HOLDS.get();
+		if (holds.containsKey(holdKey(key, LockMode.WRITE))) {
+			holds.put(holdKey, new Hold(key + RW_SUFFIX, null, 0, LockMode.READ, NO_STRIPE, null, null));
+			return true;
+		}
+
+		String rwKey = key + RW_SUFFIX;
+		String token = newToken();
+		long leaseMillis = unit.toMillis(leaseTime);
+		BooleanSupplier attempt = () -> {
+			LockBackend backend = router.route(rwKey);
+			if (!backend.readLock(rwKey, token, leaseMillis)) {
+				return false;
+			}
+			holds.put(holdKey, new Hold(rwKey, token, 0, LockMode.READ, NO_STRIPE, backend,
+					watchdog.watch(rwKey, token, leaseMillis, backend::renewReadWrite)));
+			return true;
+		};
+		return attempt.getAsBoolean()
+				|| (waitTime > 0 && await(rwKey, System.currentTimeMillis() + unit.toMillis(waitTime), attempt));
+	}
+
+	/**
+	 * 尝试获取排他写锁. 等待期间登记写等待标记,新读者不再进入,现有读者释放后写者优先获取;
+	 * 当前线程持有同一锁钥的读锁时不支持升级,直接返回false
+	 *
+	 * @author gewx
+	 * @param key       锁钥
+	 * @param waitTime  最长等待时间,0表示获取失败立即返回
+	 * @param leaseTime 锁租期
+	 * @param unit      时间单位
+	 * @return 是否获取成功
+	 **/
+	public boolean tryWriteLock(String key, long waitTime, long leaseTime, TimeUnit unit) {
+		String holdKey = holdKey(key, LockMode.WRITE);
+		if (reenter(holdKey)) {
+			return true;
+		}
+
+		Map<String, Hold> holds = HOLDS.get();
+		if (holds.containsKey(holdKey(key, LockMode.READ))) {
+			return false;
+		}
+
+		String rwKey = key + RW_SUFFIX;
+		String token = newToken();
+		long leaseMillis = unit.toMillis(leaseTime);
+		long intentTime = waitTime > 0 ? WRITE_INTENT_TIME : 0;
+		BooleanSupplier attempt = () -> {
+			LockBackend backend = router.route(rwKey);
+			long fence = backend.writeLock(rwKey, token, leaseMillis, intentTime);
+			if (fence <= 0) {
+				return false;
+			}
+			holds.put(holdKey, new Hold(rwKey, token, fence, LockMode.WRITE, NO_STRIPE, backend,
+					watchdog.watch(rwKey, token, leaseMillis, backend::renewReadWrite)));
+			return true;
+		};
+		return attempt.getAsBoolean()
+				|| (waitTime > 0 && await(rwKey, System.currentTimeMillis() + unit.toMillis(waitTime), attempt));
+	}
+
+	/**
+	 * 原子获取一组锁,全部成功或全部失败. 锁钥按自然顺序排序后由一次Lua脚本完成加锁,避免死锁与半持有状态;
+	 * 当前线程已持有的锁钥按重入处理. 一组锁钥按首个锁钥的命名空间选择后端. REMARKS: Redis集群模式下一组锁钥须使用相同hash tag
+	 *
+	 * @author gewx
+	 * @param keys      锁钥集合
+	 * @param waitTime  最长等待时间,0表示获取失败立即返回
+	 * @param leaseTime 锁租期
+	 * @param unit      时间单位
+	 * @return 是否全部获取成功
+	 **/
+	public boolean tryLockAll(Collection<String> keys, long waitTime, long leaseTime, TimeUnit unit) {
+		Map<String, Hold> holds = HOLDS.get();
+		List<String> sorted = new ArrayList<>(new TreeSet<>(keys));
+		List<String> pending = sorted.stream().filter(key -> !holds.containsKey(key)).collect(Collectors.toList());
+		long deadline = System.currentTimeMillis() + unit.toMillis(waitTime);
+		try {
+			while (true) {
+				String conflict = acquireAll(pending, leaseTime, unit);
+				if (conflict == null) {
+					sorted.stream().filter(key -> !pending.contains(key)).forEach(this::reenter);
+					return true;
+				}
+
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					return false;
+				}
+
+				LockReleaseSubscriber.Subscription subscription = subscriber.subscribe(conflict,
+						router.isRemote(conflict));
+				try {
+					long poll = ThreadLocalRandom.current().nextLong(MIN_POLL_INTERVAL, MAX_POLL_INTERVAL);
+					subscription.await(Math.min(remaining, poll));
+				} finally {
+					subscriber.unsubscribe(subscription);
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * 获取本地分段锁并执行批量加锁脚本
+	 *
+	 * @return 成功返回null,失败返回冲突的锁钥
+	 **/
+	private String acquireAll(List<String> keys, long leaseTime, TimeUnit unit) {
+		if (keys.isEmpty()) {
+			return null;
+		}
+
+		int[] taken = new int[keys.size()];
+		Arrays.fill(taken, NO_STRIPE);
+		boolean locked = false;
+		try {
+			for (int i = 0; i < keys.size(); i++) {
+				String key = keys.get(i);
+				int stripe = stripe(key);
+				if (stripes[stripe].tryLock()) {
+					stripeKeys.compareAndSet(stripe, null, key);
+					taken[i] = stripe;
+				} else if (key.equals(stripeKeys.get(stripe))) {
+					return key;
+				}
+			}
+
+			String token = newToken();
+			long leaseMillis = unit.toMillis(leaseTime);
+			LockBackend backend = router.route(keys.get(0));
+			long fence = backend.lockAll(keys, token, leaseMillis);
+			if (fence <= 0) {
+				return fence == 0 ? keys.get(0) : keys.get((int) -fence - 1);
+			}
+
+			Map<String, Hold> holds = HOLDS.get();
+			for (int i = 0; i < keys.size(); i++) {
+				String key = keys.get(i);
+				holds.put(key, new Hold(key, token, fence, LockMode.EXCLUSIVE, taken[i], backend,
+						watchdog.watch(key, token, leaseMillis, backend::renew)));
+			}
+			locked = true;
+			return null;
+		} finally {
+			if (!locked) {
+				for (int i = 0; i < keys.size(); i++) {
+					unlockStripe(taken[i], keys.get(i));
+				}
+			}
+		}
+	}
+
+	private boolean reenter(String key) {
+		Hold hold = HOLDS.get().get(key);
+		if (hold == null) {
+			return false;
+		}
+		hold.count++;
+		return true;
+	}
+
+	private boolean acquire(String key, long leaseTime, TimeUnit unit, int stripe) {
+		String token = newToken();
+		LockBackend backend = router.route(key);
+		long fence = backend.lock(key, token, unit.toMillis(leaseTime));
+		if (fence <= 0) {
+			return false;
+		}
+
+		HOLDS.get().put(key, new Hold(key, token, fence, LockMode.EXCLUSIVE, stripe, backend,
+				watchdog.watch(key, token, unit.toMillis(leaseTime), backend::renew)));
+		return true;
+	}
+
+	private static int stripe(String key) {
+		int h = key.hashCode();
+		return (h ^ (h >>> 16)) & (STRIPES - 1);
+	}
+
+	private void unlockStripe(int stripe, String key) {
+		if (stripe == NO_STRIPE) {
+			return;
+		}
+		if (stripes[stripe].getHoldCount() == 1) {
+			stripeKeys.compareAndSet(stripe, key, null);
+		}
+		stripes[stripe].unlock();
+	}
+
+	/**
+	 * 释放锁,重入计数归零时按令牌原子删除
+	 *
+	 * @author gewx
+	 * @param key 锁钥
+	 * @return void
+	 **/
+	public void unlock(String key) {
+		unlockAll(Collections.singletonList(key));
+	}
+
+	/**
+	 * 批量释放锁,每个持有标识出现一次重入计数减一,计数归零的互斥锁按后端分组由一次调用按令牌原子删除,读写锁逐个释放
+	 *
+	 * @author gewx
+	 * @param keys 持有标识集合
+	 * @return void
+	 **/
+	public void unlockAll(Collection<String> keys) {
+		Map<String, Hold> holds = HOLDS.get();
+		Map<String, Hold> released = new LinkedHashMap<>(keys.size() * 2);
+		for (String key : keys) {
+			Hold hold = holds.get(key);
+			if (hold != null && --hold.count == 0) {
+				holds.remove(key);
+				if (hold.lease != null) {
+					hold.lease.cancel();
+				}
+				released.put(key, hold);
+			}
+		}
+
+		try {
+			released.values().stream().filter(hold -> hold.mode != LockMode.EXCLUSIVE && hold.lease != null)
+					.forEach(this::unlockReadWrite);
+		} finally {
+			try {
+				compareAndDelete(released.entrySet().stream().filter(e -> e.getValue().mode == LockMode.EXCLUSIVE)
+						.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (a, b) -> a,
+								LinkedHashMap::new)));
+			} finally {
+				released.forEach((key, hold) -> unlockStripe(hold.stripe, key));
+			}
+		}
+	}
+
+	/**
+	 * 强制释放锁. 当前线程持有时清空重入计数并按锁模式释放(互斥锁按令牌删除,读写锁释放读写哈希,
+	 * 写锁内授予的读锁无需访问后端),否则直接删除
+	 *
+	 * @author gewx
+	 * @param key 持有标识
+	 * @return void
+	 **/
+	public void forceUnlock(String key) {
+		Hold hold = HOLDS.get().remove(key);
+		if (hold != null) {
+			if (hold.lease != null) {
+				hold.lease.cancel();
+			}
+			try {
+				if (hold.mode == LockMode.EXCLUSIVE) {
+					compareAndDelete(Collections.singletonMap(key, hold));
+				} else if (hold.lease != null) {
+					unlockReadWrite(hold);
+				}
+			} finally {
+				unlockStripe(hold.stripe, key);
+			}
+		} else {
+			router.route(key).forceUnlock(key);
+		}
+	}
+
+	/**
+	 * 当前线程是否持有锁
+	 *
+	 * @author gewx
+	 * @param key 锁钥
+	 * @return 是否持有
+	 **/
+	public boolean isHeldByCurrentThread(String key) {
+		return HOLDS.get().containsKey(key);
+	}
+
+	/**
+	 * 当前线程持有锁的栅栏令牌. 同一锁钥每次获取的令牌全局单调递增,写库时携带令牌校验可拒绝锁过期后的陈旧写入
+	 *
+	 * @author gewx
+	 * @param holdKey 持有标识
+	 * @return 栅栏令牌, 未持有或读锁返回0
+	 **/
+	public long getFencingToken(String holdKey) {
+		Hold hold = HOLDS.get().get(holdKey);
+		return hold == null ? 0 : hold.fence;
+	}
+
+	/**
+	 * 当前线程对锁的重入次数
+	 *
+	 * @author gewx
+	 * @param key 锁钥
+	 * @return 重入次数, 未持有返回0
+	 **/
+	public int getHoldCount(String key) {
+		Hold hold = HOLDS.get().get(key);
+		return hold == null ? 0 : hold.count;
+	}
+
+	private void unlockReadWrite(Hold hold) {
+		if (hold.mode == LockMode.READ) {
+			hold.backend.readUnlock(hold.key, hold.token);
+			return;
+		}
+
+		if (!hold.backend.writeUnlock(hold.key, hold.token)) {
+			LOGGER.warn("分布式写锁已过期或被其他持有者获取, key: " + hold.key);
+		}
+	}
+
+	private void compareAndDelete(Map<String, Hold> released) {
+		Map<LockBackend, List<String>> groups = new IdentityHashMap<>(2);
+		released.forEach((key, hold) -> groups.computeIfAbsent(hold.backend, k -> new ArrayList<>()).add(key));
+		groups.forEach((backend, keys) -> {
+			List<String> tokens = keys.stream().map(key -> released.get(key).token).collect(Collectors.toList());
+			if (backend.unlock(keys, tokens) != keys.size()) {
+				LOGGER.warn("分布式锁已过期或被其他持有者获取, keys: " + keys);
+			}
+		});
+	}
+
+	private static String newToken() {
+		return UUID.randomUUID().toString() + ":" + Thread.currentThread().getId();
+	}
+
+	/**
+	 * 锁持有信息
+	 **/
+	private static final class Hold {
+
+		/**
+		 * Redis键
+		 **/
+		private final String key;
+
+		/**
+		 * 持有者令牌,写锁内授予的读锁为null
+		 **/
+		private final String token;
+
+		/**
+		 * 栅栏令牌,读锁为0
+		 **/
+		private final long fence;
+
+		/**
+		 * 锁模式
+		 **/
+		private final LockMode mode;
+
+		/**
+		 * 本地分段锁下标
+		 **/
+		private final int stripe;
+
+		/**
+		 * 获取锁的后端,写锁内授予的读锁为null
+		 **/
+		private final LockBackend backend;
+
+		/**
+		 * 看门狗续期租约,写锁内授予的读锁为null
+		 **/
+		private final LockWatchdog.Lease lease;
+
+		/**
+		 * 重入次数
+		 **/
+		private int count = 1;
+
+		Hold(String key, String token, long fence, LockMode mode, int stripe, LockBackend backend,
+				LockWatchdog.Lease lease) {
+			this.key = key;
+			this.token = token;
+			this.fence = fence;
+			this.mode = mode;
+			this.stripe = stripe;
+			this.backend = backend;
+			this.lease = lease;
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package micro.commons.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import org.apache.shiro.util.ThreadContext;
+import org.slf4j.MDC;
+import org.springframework.core.task.TaskDecorator;
+
+import com.alibaba.ttl.TransmittableThreadLocal;
+import com.alibaba.ttl.TransmittableThreadLocal.Transmitter;
+import com.alibaba.ttl.TtlCallable;
+import com.alibaba.ttl.TtlRunnable;
+
+import micro.commons.annotation.ThreadSafe;
+
+/**
+ * 线程上下文传递装饰器. 提交任务时捕获调用线程的TransmittableThreadLocal(含ThreadContextEnum Feign请求头)、
+ * MDC(链路追踪)与Shiro主体,任务执行前在工作线程回放,执行后恢复工作线程原有上下文; 重复装饰不会重复捕获
+ *
+ * <pre>
+ * executor.setTaskDecorator(ThreadContextDecorator.INSTANCE);
+ * </pre>
+ *
+ * @author gewx
+ **/
+@ThreadSafe
+public final class ThreadContextDecorator implements TaskDecorator {
+
+	public static final ThreadContextDecorator INSTANCE = new ThreadContextDecorator();
+
+	/**
+	 * 回放前工作线程的上下文,任务嵌套执行(调用线程执行)时逐层恢复
+	 **/
+	private static final ThreadLocal<Deque<Snapshot>> BACKUPS = ThreadLocal.withInitial(ArrayDeque::new);
+
+	/**
+	 * MDC与Shiro主体快照载体: 捕获时(copy)抓取调用线程上下文,回放时(beforeExecute/afterExecute)安装与恢复
+	 **/
+	private static final TransmittableThreadLocal<Snapshot> CONTEXT = new TransmittableThreadLocal<Snapshot>() {
+
+		@Override
+		protected Snapshot initialValue() {
+			return Snapshot.EMPTY;
+		}
+
+		@Override
+		public Snapshot copy(Snapshot parentValue) {
+			return Snapshot.capture();
+		}
+
+		@Override
+		protected void beforeExecute() {
+			BACKUPS.get().push(Snapshot.capture());
+			get().apply();
+		}
+
+		@Override
+		protected void afterExecute() {
+			Snapshot backup = BACKUPS.get().poll();
+			if (backup != null) {
+				backup.apply();
+			}
+		}
+	};
+
+	private ThreadContextDecorator() {
+	}
+
+	@Override
+	public java.lang.Runnable decorate(java.lang.Runnable runnable) {
+		return wrap(runnable);
+	}
+
+	/**
+	 * 装饰任务,捕获当前线程上下文
+	 *
+	 * @author gewx
+	 * @param runnable 任务
+	 * @return 装饰后的任务
+	 **/
+	public static java.lang.Runnable wrap(java.lang.Runnable runnable) {
+		CONTEXT.get();
+		return TtlRunnable.get(runnable, false, true);
+	}
+
+	/**
+	 * 装饰任务,捕获当前线程上下文
+	 *
+	 * @author gewx
+	 * @param callable 任务
+	 * @return 装饰后的任务
+	 **/
+	public static <T> Callable<T> wrap(Callable<T> callable) {
+		CONTEXT.get();
+		return TtlCallable.get(callable, false, true);
+	}
+
+	/**
+	 * 装饰函数,捕获当前线程上下文,每次调用时回放
+	 *
+	 * @author gewx
+	 * @param function 函数
+	 * @return 装饰后的函数
+	 **/
+	public static <T, R> Function<T, R> wrap(Function<T, R> function) {
+		CONTEXT.get();
+		Object captured = Transmitter.capture();
+		return value -> {
+			Object backup = Transmitter.replay(captured);
+			try {
+				return function.apply(value);
+			} finally {
+				Transmitter.restore(backup);
+			}
+		};
+	}
+
+	/**
+	 * 装饰执行器,提交的每个任务捕获提交线程上下文
+	 *
+	 * @author gewx
+	 * @param executor 执行器
+	 * @return 装饰后的执行器
+	 **/
+	public static Executor wrap(Executor executor) {
+		return command -> executor.execute(wrap(command));
+	}
+
+	/**
+	 * 上下文快照
+	 **/
+	private static final class Snapshot {
+
+		private static final Snapshot EMPTY = new Snapshot(null, null);
+
+		private final Map<String, String> mdc;
+
+		private final Map<Object, Object> shiro;
+
+		private Snapshot(Map<String, String> mdc, Map<Object, Object> shiro) {
+			this.mdc = mdc;
+			this.shiro = shiro;
+		}
+
+		static Snapshot capture() {
+			return new Snapshot(MDC.getCopyOfContextMap(), ThreadContext.getResources());
+		}
+
+		void apply() {
+			if (mdc == null) {
+				MDC.clear();
+			} else {
+				MDC.setContextMap(mdc);
+			}
+
+			if (shiro == null) {
+				ThreadContext.remove();
+			} else {
+				ThreadContext.setResources(shiro);
+			}
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package micro.commons.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import micro.commons.annotation.ThreadSafe;
+
+/**
+ * 线程池指标: 队列深度、活跃线程、任务排队与执行耗时直方图、完成/异常/拒绝计数. 通过任务装饰器与拒绝策略包装采集,
+ * 不改变线程池原有行为; 拒绝计数包含被丢弃(DiscardPolicy)与由调用线程执行(CallerRunsPolicy)的任务
+ *
+ * @author gewx
+ **/
+@ThreadSafe
+public final class ExecutorMetrics {
+
+	/**
+	 * 已登记的线程池指标, key: 线程池名称
+	 **/
+	private static final Map<String, ExecutorMetrics> REGISTRY = new ConcurrentHashMap<>(16);
+
+	private final ThreadPoolTaskExecutor executor;
+
+	private final LongAdder submitted = new LongAdder();
+
+	private final LongAdder completed = new LongAdder();
+
+	private final LongAdder failed = new LongAdder();
+
+	private final LongAdder rejected = new LongAdder();
+
+	private final LatencyHistogram wait = new LatencyHistogram();
+
+	private final LatencyHistogram run = new LatencyHistogram();
+
+	private ExecutorMetrics(ThreadPoolTaskExecutor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * 为线程池安装指标采集并登记,须在线程池initialize之前调用
+	 *
+	 * @author gewx
+	 * @param name      线程池名称
+	 * @param executor  线程池
+	 * @param decorator 原任务装饰器,可为null
+	 * @param handler   原拒绝策略
+	 * @return 线程池指标
+	 **/
+	public static ExecutorMetrics instrument(String name, ThreadPoolTaskExecutor executor, TaskDecorator decorator,
+			RejectedExecutionHandler handler) {
+		ExecutorMetrics metrics = register(name, executor);
+		executor.setTaskDecorator(runnable -> metrics.decorate(decorator == null ? runnable : decorator.decorate(runnable)));
+		executor.setRejectedExecutionHandler(metrics.decorate(handler));
+		return metrics;
+	}
+
+	/**
+	 * 登记线程池指标,由调用方自行通过decorate包装任务与拒绝策略
+	 *
+	 * @author gewx
+	 * @param name     线程池名称
+	 * @param executor 线程池
+	 * @return 线程池指标
+	 **/
+	public static ExecutorMetrics register(String name, ThreadPoolTaskExecutor executor) {
+		ExecutorMetrics metrics = new ExecutorMetrics(executor);
+		REGISTRY.put(name, metrics);
+		return metrics;
+	}
+
+	/**
+	 * 全部线程池指标快照
+	 *
+	 * @author gewx
+	 * @return 各线程池指标, key: 线程池名称
+	 **/
+	public static Map<String, Object> snapshotAll() {
+		Map<String, Object> map = new LinkedHashMap<>(REGISTRY.size() * 2);
+		REGISTRY.forEach((name, metrics) -> map.put(name, metrics.snapshot()));
+		return map;
+	}
+
+	/**
+	 * 指标快照
+	 *
+	 * @author gewx
+	 * @return 指标数据
+	 **/
+	public Map<String, Object> snapshot() {
+		Map<String, Object> map = new LinkedHashMap<>(16);
+		ThreadPoolExecutor pool = executor.getThreadPoolExecutor();
+		map.put("corePoolSize", pool.getCorePoolSize());
+		map.put("maxPoolSize", pool.getMaximumPoolSize());
+		map.put("poolSize", pool.getPoolSize());
+		map.put("largestPoolSize", pool.getLargestPoolSize());
+		map.put("activeCount", pool.getActiveCount());
+		map.put("queueSize", pool.getQueue().size());
+		map.put("queueRemaining", pool.getQueue().remainingCapacity());
+		map.put("submitted", submitted.sum());
+		map.put("completed", completed.sum());
+		map.put("failed", failed.sum());
+		map.put("rejected", rejected.sum());
+		map.put("waitMicros", wait.snapshot());
+		map.put("runMicros", run.snapshot());
+		return map;
+	}
+
+	/**
+	 * 包装任务,采集排队与执行耗时,须在提交线程调用
+	 *
+	 * @author gewx
+	 * @param task 任务
+	 * @return 包装后的任务
+	 **/
+	public Runnable decorate(Runnable task) {
+		long submitTime = System.nanoTime();
+		submitted.increment();
+		return () -> {
+			long start = System.nanoTime();
+			wait.record(start - submitTime);
+			try {
+				task.run();
+			} catch (RuntimeException | Error ex) {
+				failed.increment();
+				throw ex;
+			} finally {
+				run.record(System.nanoTime() - start);
+				completed.increment();
+			}
+		};
+	}
+
+	/**
+	 * 包装拒绝策略,采集拒绝计数
+	 *
+	 * @author gewx
+	 * @param handler 拒绝策略
+	 * @return 包装后的拒绝策略
+	 **/
+	public RejectedExecutionHandler decorate(RejectedExecutionHandler handler) {
+		return (runnable, pool) -> {
+			rejected.increment();
+			handler.rejectedExecution(runnable, pool);
+		};
+	}
+}
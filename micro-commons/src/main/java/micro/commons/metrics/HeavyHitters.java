@@ -0,0 +1,133 @@
+package micro.commons.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import micro.commons.annotation.ThreadSafe;
+
+/**
+ * 热点统计,基于Space-Saving算法,固定容量内近似统计出现次数最多的元素. 计数可能高估,最大误差为error;
+ * 元素按哈希分片统计,读取时合并. 已跟踪元素计数无锁递增,仅新元素登记与淘汰持有所在分片的锁
+ *
+ * @author gewx
+ **/
+@ThreadSafe
+public final class HeavyHitters {
+
+	/**
+	 * 分片数量,须为2的幂
+	 **/
+	private static final int SHARDS = 16;
+
+	private final Shard[] shards = new Shard[SHARDS];
+
+	public HeavyHitters(int capacity) {
+		int shardCapacity = Math.max(1, (capacity + SHARDS - 1) / SHARDS);
+		for (int i = 0; i < SHARDS; i++) {
+			shards[i] = new Shard(shardCapacity);
+		}
+	}
+
+	/**
+	 * 记录元素出现一次
+	 *
+	 * @author gewx
+	 * @param item 元素
+	 * @return void
+	 **/
+	public void offer(String item) {
+		int h = item.hashCode();
+		shards[(h ^ (h >>> 16)) & (SHARDS - 1)].offer(item);
+	}
+
+	/**
+	 * 获取出现次数最多的元素
+	 *
+	 * @author gewx
+	 * @param n 返回数量
+	 * @return 元素、估计次数及误差,按次数倒序
+	 **/
+	public List<Map<String, Object>> top(int n) {
+		List<Counter> snapshot = new ArrayList<>(SHARDS * 8);
+		for (Shard shard : shards) {
+			shard.counters.values().forEach(c -> snapshot.add(new Counter(c.item, c.count.get(), c.error)));
+		}
+		snapshot.sort((a, b) -> Long.compare(b.count.get(), a.count.get()));
+
+		List<Map<String, Object>> list = new ArrayList<>(Math.min(n, snapshot.size()));
+		for (Counter c : snapshot.subList(0, Math.min(n, snapshot.size()))) {
+			Map<String, Object> map = new LinkedHashMap<>(4);
+			map.put("key", c.item);
+			map.put("count", c.count.get());
+			map.put("error", c.error);
+			list.add(map);
+		}
+		return list;
+	}
+
+	private static final class Shard {
+
+		/**
+		 * 分片最大跟踪元素数
+		 **/
+		private final int capacity;
+
+		private final Map<String, Counter> counters;
+
+		Shard(int capacity) {
+			this.capacity = capacity;
+			this.counters = new ConcurrentHashMap<>(capacity * 2);
+		}
+
+		void offer(String item) {
+			Counter counter = counters.get(item);
+			if (counter != null) {
+				counter.count.incrementAndGet();
+				return;
+			}
+
+			synchronized (this) {
+				counter = counters.get(item);
+				if (counter != null) {
+					counter.count.incrementAndGet();
+					return;
+				}
+
+				if (counters.size() < capacity) {
+					counters.put(item, new Counter(item, 1, 0));
+					return;
+				}
+
+				Counter min = null;
+				for (Counter c : counters.values()) {
+					if (min == null || c.count.get() < min.count.get()) {
+						min = c;
+					}
+				}
+				// 淘汰期间对min的并发递增可能丢失,计数本为近似值
+				long minCount = min.count.get();
+				counters.remove(min.item);
+				counters.put(item, new Counter(item, minCount + 1, minCount));
+			}
+		}
+	}
+
+	private static final class Counter {
+
+		private final String item;
+
+		private final AtomicLong count;
+
+		private final long error;
+
+		Counter(String item, long count, long error) {
+			this.item = item;
+			this.count = new AtomicLong(count);
+			this.error = error;
+		}
+	}
+}
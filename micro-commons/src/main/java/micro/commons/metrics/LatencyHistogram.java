@@ -0,0 +1,134 @@
+package micro.commons.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import micro.commons.annotation.ThreadSafe;
+
+/**
+ * 延迟直方图,对数分桶(每个2的幂区间8个子桶,相对误差<12.5%),记录无锁. 单位:微秒
+ *
+ * @author gewx
+ **/
+@ThreadSafe
+public final class LatencyHistogram {
+
+	/**
+	 * 子桶位数
+	 **/
+	private static final int SUB_BITS = 3;
+
+	/**
+	 * 每个2的幂区间子桶数
+	 **/
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+
+	/**
+	 * 桶数量,覆盖long取值范围
+	 **/
+	private static final int BUCKETS = (Long.SIZE - SUB_BITS) * SUB_COUNT;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder total = new LongAdder();
+
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * 记录耗时
+	 *
+	 * @author gewx
+	 * @param nanos 耗时,单位:纳秒
+	 * @return void
+	 **/
+	public void record(long nanos) {
+		long micros = Math.max(TimeUnit.NANOSECONDS.toMicros(nanos), 0);
+		buckets.incrementAndGet(index(micros));
+		count.increment();
+		total.add(micros);
+		max.accumulate(micros);
+	}
+
+	/**
+	 * 记录次数
+	 *
+	 * @author gewx
+	 * @return 记录次数
+	 **/
+	public long count() {
+		return count.sum();
+	}
+
+	/**
+	 * 计算分位值
+	 *
+	 * @author gewx
+	 * @param percentile 分位,取值(0,100]
+	 * @return 分位值上界,单位:微秒
+	 **/
+	public long percentile(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		long sum = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = buckets.get(i);
+			sum += snapshot[i];
+		}
+		if (sum == 0) {
+			return 0;
+		}
+
+		long rank = (long) Math.ceil(sum * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= Math.max(rank, 1)) {
+				return Math.min(upperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * 直方图快照
+	 *
+	 * @author gewx
+	 * @return 次数、均值、最大值及常用分位值,单位:微秒
+	 **/
+	public Map<String, Object> snapshot() {
+		long n = count.sum();
+		Map<String, Object> map = new LinkedHashMap<>(8);
+		map.put("count", n);
+		map.put("mean", n == 0 ? 0 : total.sum() / n);
+		map.put("max", max.get());
+		map.put("p50", percentile(50));
+		map.put("p90", percentile(90));
+		map.put("p99", percentile(99));
+		map.put("p999", percentile(99.9));
+		return map;
+	}
+
+	private static int index(long value) {
+		if (value < SUB_COUNT) {
+			return (int) value;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		int shift = magnitude - SUB_BITS;
+		int sub = (int) ((value >>> shift) & (SUB_COUNT - 1));
+		return (magnitude - SUB_BITS + 1) * SUB_COUNT + sub;
+	}
+
+	private static long upperBound(int index) {
+		if (index < SUB_COUNT) {
+			return index;
+		}
+		int shift = index / SUB_COUNT - 1;
+		long lower = ((long) (SUB_COUNT + index % SUB_COUNT)) << shift;
+		return lower + (1L << shift) - 1;
+	}
+}
@@ -22,6 +22,16 @@ public abstract class AbstractTaskBean implements Runnable {
 	 * **/
 	private Runnable task;
 
+	/**
+	 * 执行优先级
+	 * **/
+	private TaskPriority priority = TaskPriority.NORMAL;
+
+	/**
+	 * 执行线程池名称,为空时使用全局线程池
+	 * **/
+	private String poolName;
+
 	public String getTaskId() {
 		return taskId;
 	}
@@ -45,4 +55,20 @@ public abstract class AbstractTaskBean implements Runnable {
 	public void setTask(Runnable task) {
 		this.task = task;
 	}
+
+	public TaskPriority getPriority() {
+		return priority;
+	}
+
+	public void setPriority(TaskPriority priority) {
+		this.priority = priority;
+	}
+
+	public String getPoolName() {
+		return poolName;
+	}
+
+	public void setPoolName(String poolName) {
+		this.poolName = poolName;
+	}
 }
@@ -40,12 +40,42 @@ public abstract class AbstractTaskBeanDelayed implements Delayed, Runnable {
 	 **/
 	private Runnable task;
 
+	/**
+	 * 执行优先级
+	 **/
+	private TaskPriority priority = TaskPriority.NORMAL;
+
+	/**
+	 * 执行线程池名称,为空时使用全局线程池
+	 **/
+	private String poolName;
+
+	/**
+	 * 业务数据,持久化模式下随任务写入预写日志,供重启后重建任务
+	 **/
+	private String payload;
+
+	/**
+	 * 重试策略,为空时异常不重试. 不参与持久化,恢复时须由DelayTaskRestorer重新设置
+	 **/
+	private RetryPolicy retryPolicy;
+
+	/**
+	 * 首次失败时间戳,0表示未失败
+	 **/
+	private long firstFailure;
+
+	/**
+	 * 上次重试延迟,单位:毫秒
+	 **/
+	private long lastDelay;
+
 	/**
 	 * 优先队列里面优先级规则 TimeUnit .MILLISECONDS 获取单位 为毫秒的时间戳
 	 **/
 	@Override
 	public int compareTo(Delayed o) {
-		return (int) (this.getDelay(TimeUnit.MILLISECONDS) - o.getDelay(TimeUnit.MILLISECONDS));
+		return Long.compare(this.getDelay(TimeUnit.MILLISECONDS), o.getDelay(TimeUnit.MILLISECONDS));
 	}
 
 	/**
@@ -103,4 +133,52 @@ public abstract class AbstractTaskBeanDelayed implements Delayed, Runnable {
 	public void setTask(Runnable task) {
 		this.task = task;
 	}
+
+	public TaskPriority getPriority() {
+		return priority;
+	}
+
+	public void setPriority(TaskPriority priority) {
+		this.priority = priority;
+	}
+
+	public String getPoolName() {
+		return poolName;
+	}
+
+	public void setPoolName(String poolName) {
+		this.poolName = poolName;
+	}
+
+	public String getPayload() {
+		return payload;
+	}
+
+	public void setPayload(String payload) {
+		this.payload = payload;
+	}
+
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
+	public long getFirstFailure() {
+		return firstFailure;
+	}
+
+	public void setFirstFailure(long firstFailure) {
+		this.firstFailure = firstFailure;
+	}
+
+	public long getLastDelay() {
+		return lastDelay;
+	}
+
+	public void setLastDelay(long lastDelay) {
+		this.lastDelay = lastDelay;
+	}
 }
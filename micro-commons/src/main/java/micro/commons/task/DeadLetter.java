@@ -0,0 +1,41 @@
+package micro.commons.task;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 死信: 重试耗尽的延迟任务
+ *
+ * @author gewx
+ **/
+@Getter
+@ToString
+public final class DeadLetter {
+
+	/**
+	 * 任务记录
+	 **/
+	private final DelayTaskRecord record;
+
+	/**
+	 * 最后一次异常类型
+	 **/
+	private final String errorType;
+
+	/**
+	 * 最后一次异常信息
+	 **/
+	private final String errorMessage;
+
+	/**
+	 * 进入死信的时间戳
+	 **/
+	private final long deadAt;
+
+	DeadLetter(DelayTaskRecord record, Throwable error, long deadAt) {
+		this.record = record;
+		this.errorType = error.getClass().getName();
+		this.errorMessage = error.getMessage();
+		this.deadAt = deadAt;
+	}
+}
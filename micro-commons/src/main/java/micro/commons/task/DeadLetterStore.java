@@ -0,0 +1,37 @@
+package micro.commons.task;
+
+import java.util.List;
+
+/**
+ * 死信存储,可替换为持久化实现(注册为Spring Bean即可)
+ *
+ * @author gewx
+ **/
+public interface DeadLetterStore {
+
+	/**
+	 * 写入死信
+	 *
+	 * @author gewx
+	 * @param deadLetter 死信
+	 * @return void
+	 **/
+	void add(DeadLetter deadLetter);
+
+	/**
+	 * 全部死信,按进入时间先后排列
+	 *
+	 * @author gewx
+	 * @return 死信
+	 **/
+	List<DeadLetter> list();
+
+	/**
+	 * 移除死信
+	 *
+	 * @author gewx
+	 * @param taskId 任务Id
+	 * @return 移除的死信,不存在返回null
+	 **/
+	DeadLetter remove(String taskId);
+}
@@ -0,0 +1,172 @@
+package micro.commons.task;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 延迟任务持久化记录,不含任务执行体与重试策略; 重启后由DelayTaskRestorer按任务名称重建任务
+ *
+ * @author gewx
+ **/
+@Getter
+@ToString
+public final class DelayTaskRecord {
+
+	/**
+	 * 任务Id
+	 **/
+	private final String taskId;
+
+	/**
+	 * 任务名称
+	 **/
+	private final String taskName;
+
+	/**
+	 * 到期时间戳,单位:毫秒
+	 **/
+	private final long expire;
+
+	/**
+	 * 重试-最大次数
+	 **/
+	private final int retryMax;
+
+	/**
+	 * 重试当前次数
+	 **/
+	private final int retryNum;
+
+	/**
+	 * 执行优先级
+	 **/
+	private final TaskPriority priority;
+
+	/**
+	 * 执行线程池名称
+	 **/
+	private final String poolName;
+
+	/**
+	 * 业务数据
+	 **/
+	private final String payload;
+
+	/**
+	 * 首次失败时间戳
+	 **/
+	private final long firstFailure;
+
+	/**
+	 * 上次重试延迟,单位:毫秒
+	 **/
+	private final long lastDelay;
+
+	private DelayTaskRecord(String taskId, String taskName, long expire, int retryMax, int retryNum,
+			TaskPriority priority, String poolName, String payload, long firstFailure, long lastDelay) {
+		this.taskId = taskId;
+		this.taskName = taskName;
+		this.expire = expire;
+		this.retryMax = retryMax;
+		this.retryNum = retryNum;
+		this.priority = priority;
+		this.poolName = poolName;
+		this.payload = payload;
+		this.firstFailure = firstFailure;
+		this.lastDelay = lastDelay;
+	}
+
+	static DelayTaskRecord of(AbstractTaskBeanDelayed taskBean) {
+		return new DelayTaskRecord(taskBean.getTaskId(), taskBean.getTaskName(), taskBean.getExpire(),
+				taskBean.getRetryMax(), taskBean.getRetryNum(), taskBean.getPriority(), taskBean.getPoolName(),
+				taskBean.getPayload(), taskBean.getFirstFailure(), taskBean.getLastDelay());
+	}
+
+	/**
+	 * 将记录属性回填到任务
+	 *
+	 * @author gewx
+	 * @param taskBean 任务
+	 * @return 任务
+	 **/
+	public <T extends AbstractTaskBeanDelayed> T applyTo(T taskBean) {
+		taskBean.setTaskId(taskId);
+		taskBean.setTaskName(taskName);
+		taskBean.setExpire(expire);
+		taskBean.setRetryMax(retryMax);
+		taskBean.setRetryNum(retryNum);
+		taskBean.setPriority(priority);
+		taskBean.setPoolName(poolName);
+		taskBean.setPayload(payload);
+		taskBean.setFirstFailure(firstFailure);
+		taskBean.setLastDelay(lastDelay);
+		return taskBean;
+	}
+
+	byte[] encode() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			writeString(out, taskId);
+			writeString(out, taskName);
+			out.writeLong(expire);
+			out.writeInt(retryMax);
+			out.writeInt(retryNum);
+			out.writeByte(priority == null ? -1 : priority.ordinal());
+			writeString(out, poolName);
+			writeString(out, payload);
+			out.writeLong(firstFailure);
+			out.writeLong(lastDelay);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		return bytes.toByteArray();
+	}
+
+	static DelayTaskRecord decode(byte[] data) {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+			String taskId = readString(in);
+			String taskName = readString(in);
+			long expire = in.readLong();
+			int retryMax = in.readInt();
+			int retryNum = in.readInt();
+			byte priority = in.readByte();
+			String poolName = readString(in);
+			String payload = readString(in);
+			// 重试状态字段后加,兼容此前写入的记录
+			long firstFailure = in.available() > 0 ? in.readLong() : 0;
+			long lastDelay = in.available() > 0 ? in.readLong() : 0;
+			return new DelayTaskRecord(taskId, taskName, expire, retryMax, retryNum,
+					priority < 0 ? null : TaskPriority.values()[priority], poolName, payload, firstFailure, lastDelay);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,26 @@
+package micro.commons.task;
+
+/**
+ * 延迟任务恢复器,重启回放预写日志时按任务名称重建任务执行体
+ *
+ * @author gewx
+ **/
+public interface DelayTaskRestorer {
+
+	/**
+	 * 可恢复的任务名称
+	 *
+	 * @author gewx
+	 * @return 任务名称
+	 **/
+	String getTaskName();
+
+	/**
+	 * 重建任务,可通过DelayTaskRecord.applyTo回填任务属性; 重试策略未持久化,需要重试的任务须在此重新设置
+	 *
+	 * @author gewx
+	 * @param record 持久化记录
+	 * @return 任务
+	 **/
+	AbstractTaskBeanDelayed restore(DelayTaskRecord record);
+}
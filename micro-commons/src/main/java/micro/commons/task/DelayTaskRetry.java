@@ -0,0 +1,85 @@
+package micro.commons.task;
+
+import micro.commons.log.MicroLogger;
+
+/**
+ * 延迟任务重试. 配置了重试策略的任务执行抛出异常时,按策略计算延迟重新登记; 重试次数达到retryMax或策略放弃后写入死信存储.
+ * retryMax小于等于0时不限次数,由策略决定何时放弃(如withMaxElapsed)
+ *
+ * @author gewx
+ **/
+public final class DelayTaskRetry {
+
+	private static final MicroLogger LOGGER = new MicroLogger(DelayTaskRetry.class);
+
+	private DelayTaskRetry() {
+	}
+
+	/**
+	 * 默认死信容量
+	 **/
+	private static final int DEAD_LETTER_CAPACITY = 1000;
+
+	private static volatile DeadLetterStore deadLetterStore = new MemoryDeadLetterStore(DEAD_LETTER_CAPACITY);
+
+	/**
+	 * 死信存储
+	 *
+	 * @author gewx
+	 * @return 死信存储
+	 **/
+	public static DeadLetterStore getDeadLetterStore() {
+		return deadLetterStore;
+	}
+
+	/**
+	 * 替换死信存储
+	 *
+	 * @author gewx
+	 * @param store 死信存储
+	 * @return void
+	 **/
+	public static void setDeadLetterStore(DeadLetterStore store) {
+		deadLetterStore = store;
+	}
+
+	/**
+	 * 执行到期任务,未配置重试策略时异常照常抛出
+	 **/
+	static void run(AbstractTaskBeanDelayed taskBean) {
+		RetryPolicy policy = taskBean.getRetryPolicy();
+		if (policy == null) {
+			taskBean.run();
+			return;
+		}
+
+		try {
+			taskBean.run();
+		} catch (RuntimeException ex) {
+			onFailure(taskBean, policy, ex);
+		}
+	}
+
+	private static void onFailure(AbstractTaskBeanDelayed taskBean, RetryPolicy policy, RuntimeException ex) {
+		long now = System.currentTimeMillis();
+		if (taskBean.getFirstFailure() == 0) {
+			taskBean.setFirstFailure(now);
+		}
+
+		int retryMax = taskBean.getRetryMax();
+		long delay = retryMax <= 0 || taskBean.getRetryNum() < retryMax
+				? policy.nextDelay(taskBean.getRetryNum(), taskBean.getLastDelay(), now - taskBean.getFirstFailure())
+				: -1;
+		if (delay < 0) {
+			deadLetterStore.add(new DeadLetter(DelayTaskRecord.of(taskBean), ex, now));
+			LOGGER.warn("onFailure", "延迟任务重试耗尽,写入死信, taskId: " + taskBean.getTaskId() + ", retryNum: "
+					+ taskBean.getRetryNum() + ", ex: " + ex.getMessage());
+			return;
+		}
+
+		taskBean.setRetryNum(taskBean.getRetryNum() + 1);
+		taskBean.setLastDelay(delay);
+		taskBean.setExpire(now + delay);
+		GlobalDelayQueueTask.getInstance().compareAndSet(taskBean);
+	}
+}
@@ -0,0 +1,512 @@
+package micro.commons.task;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import micro.commons.annotation.ThreadSafe;
+import micro.commons.log.MicroLogger;
+
+/**
+ * 延迟任务预写日志. 登记、覆盖与完成事件追加写入内存映射的分段文件,段写满后滚动; 刷盘由单独线程批量执行(组提交),
+ * 同步模式下写入方等待覆盖其记录的刷盘完成. 后台定期将已封存的段压缩为仅含待执行任务的单个快照段,
+ * 启动时按段序回放重建待执行任务; 快照段以快照标记开头,回放到标记时丢弃更早段的状态,压缩中途崩溃残留的旧段不会复活已完成任务.
+ *
+ * <pre>
+ * 记录格式: [int 记录体长度][int CRC32][byte 事件类型][事件数据]
+ * </pre>
+ *
+ * @author gewx
+ **/
+@ThreadSafe
+public final class DelayTaskWal implements Closeable {
+
+	private static final MicroLogger LOGGER = new MicroLogger(DelayTaskWal.class);
+
+	/**
+	 * 事件类型: 登记或覆盖
+	 **/
+	private static final byte SCHEDULE = 1;
+
+	/**
+	 * 事件类型: 完成或取消
+	 **/
+	private static final byte COMPLETE = 2;
+
+	/**
+	 * 事件类型: 快照开始,此前各段的状态作废
+	 **/
+	private static final byte SNAPSHOT = 3;
+
+	/**
+	 * 记录头长度
+	 **/
+	private static final int HEADER = 8;
+
+	private static final String SUFFIX = ".wal";
+
+	/**
+	 * 日志目录
+	 **/
+	private final Path dir;
+
+	/**
+	 * 段文件大小,单位:字节
+	 **/
+	private final int segmentSize;
+
+	/**
+	 * 是否等待刷盘完成
+	 **/
+	private final boolean sync;
+
+	/**
+	 * 追加锁
+	 **/
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * 刷盘通知
+	 **/
+	private final Object flushMonitor = new Object();
+
+	/**
+	 * 压缩锁
+	 **/
+	private final Object compactMonitor = new Object();
+
+	/**
+	 * 待执行任务, key: 任务Id
+	 **/
+	private final Map<String, Live> live = new ConcurrentHashMap<>(1024);
+
+	/**
+	 * 当前段
+	 **/
+	private MappedByteBuffer buffer;
+
+	/**
+	 * 当前段序号
+	 **/
+	private int segment;
+
+	/**
+	 * 磁盘上最早的段序号
+	 **/
+	private int oldest;
+
+	/**
+	 * 最近一次压缩生成的段序号
+	 **/
+	private int compacted;
+
+	/**
+	 * 累计写入字节数
+	 **/
+	private volatile long written;
+
+	/**
+	 * 累计刷盘字节数
+	 **/
+	private volatile long flushed;
+
+	private volatile boolean closed;
+
+	private final Thread flusher;
+
+	private final ScheduledExecutorService compactor;
+
+	private DelayTaskWal(Path dir, int segmentSize, boolean sync, long compactIntervalMillis) throws IOException {
+		this.dir = dir;
+		this.segmentSize = segmentSize;
+		this.sync = sync;
+
+		Files.createDirectories(dir);
+		List<Integer> segments = listSegments();
+		int snapshot = 0;
+		for (int seg : segments) {
+			if (replay(seg)) {
+				snapshot = seg;
+			}
+		}
+		// 清理上次压缩未删除的旧段
+		for (int seg : segments) {
+			if (seg < snapshot) {
+				Files.deleteIfExists(path(seg));
+			}
+		}
+		this.oldest = segments.isEmpty() ? 1 : Math.max(segments.get(0), snapshot);
+		this.compacted = snapshot;
+		this.segment = segments.isEmpty() ? 1 : segments.get(segments.size() - 1) + 1;
+		this.buffer = map(segment);
+
+		this.flusher = new DefaultThreadFactory("YOGA_TASK_WAL_FLUSH", true).newThread(this::flushLoop);
+		this.flusher.start();
+		this.compactor = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("YOGA_TASK_WAL_COMPACT", true));
+		this.compactor.scheduleWithFixedDelay(this::compactQuietly, compactIntervalMillis, compactIntervalMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 打开预写日志并回放已有的段
+	 *
+	 * @author gewx
+	 * @param dir                   日志目录
+	 * @param segmentSize           段文件大小,单位:字节
+	 * @param sync                  是否等待刷盘完成
+	 * @param compactIntervalMillis 压缩间隔,单位:毫秒
+	 * @return 预写日志
+	 **/
+	public static DelayTaskWal open(String dir, int segmentSize, boolean sync, long compactIntervalMillis) {
+		try {
+			return new DelayTaskWal(Paths.get(dir), segmentSize, sync, compactIntervalMillis);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	/**
+	 * 待执行任务记录
+	 *
+	 * @author gewx
+	 * @return 待执行任务记录
+	 **/
+	public List<DelayTaskRecord> pending() {
+		return live.values().stream().map(l -> l.record).collect(Collectors.toList());
+	}
+
+	/**
+	 * 登记或覆盖任务
+	 *
+	 * @author gewx
+	 * @param record 任务记录
+	 * @return void
+	 **/
+	public void schedule(DelayTaskRecord record) {
+		awaitFlush(writeSchedule(record));
+	}
+
+	/**
+	 * 完成或取消任务
+	 *
+	 * @author gewx
+	 * @param taskId 任务Id
+	 * @return void
+	 **/
+	public void complete(String taskId) {
+		awaitFlush(writeComplete(taskId));
+	}
+
+	/**
+	 * 追加登记记录,不等待刷盘
+	 *
+	 * @return 写入序号,用于awaitFlush
+	 **/
+	long writeSchedule(DelayTaskRecord record) {
+		return write(SCHEDULE, record.getTaskId(), record.encode(), record);
+	}
+
+	/**
+	 * 追加完成记录,不等待刷盘
+	 *
+	 * @return 写入序号,用于awaitFlush
+	 **/
+	long writeComplete(String taskId) {
+		return write(COMPLETE, taskId, taskId.getBytes(StandardCharsets.UTF_8), null);
+	}
+
+	/**
+	 * 任务是否仍处于待执行状态
+	 **/
+	boolean isLive(String taskId) {
+		return live.containsKey(taskId);
+	}
+
+	/**
+	 * 通知刷盘,同步模式下等待写入序号之前的记录刷盘完成
+	 **/
+	void awaitFlush(long seq) {
+		synchronized (flushMonitor) {
+			flushMonitor.notifyAll();
+			try {
+				while (sync && flushed < seq && !closed) {
+					flushMonitor.wait();
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * 压缩: 封存当前段,将全部已封存的段重写为仅含待执行任务的单个段
+	 *
+	 * @author gewx
+	 * @return void
+	 **/
+	public void compact() throws IOException {
+		synchronized (compactMonitor) {
+			int sealed;
+			lock.lock();
+			try {
+				if (buffer.position() > 0) {
+					rotate();
+				}
+				sealed = segment - 1;
+			} finally {
+				lock.unlock();
+			}
+			if (sealed < oldest || sealed == compacted) {
+				return;
+			}
+
+			List<byte[]> frames = new ArrayList<>();
+			frames.add(frame(SNAPSHOT, new byte[0]));
+			int size = frames.get(0).length;
+			for (Live l : live.values()) {
+				if (l.segment <= sealed) {
+					byte[] frame = frame(SCHEDULE, l.record.encode());
+					frames.add(frame);
+					size += frame.length;
+				}
+			}
+
+			Path tmp = dir.resolve(sealed + SUFFIX + ".tmp");
+			try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				ByteBuffer out = ByteBuffer.allocate(size);
+				frames.forEach(out::put);
+				out.flip();
+				while (out.hasRemaining()) {
+					channel.write(out);
+				}
+				channel.force(true);
+			}
+			Files.move(tmp, path(sealed), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			// 快照段落盘后再删除旧段,删除中途失败由下次启动清理
+			forceDir();
+			for (int seg = oldest; seg < sealed; seg++) {
+				Files.deleteIfExists(path(seg));
+			}
+			oldest = sealed;
+			compacted = sealed;
+		}
+	}
+
+	@Override
+	public void close() {
+		compactor.shutdown();
+		synchronized (flushMonitor) {
+			closed = true;
+			flushMonitor.notifyAll();
+		}
+		try {
+			flusher.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		lock.lock();
+		try {
+			buffer.force();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private long write(byte type, String taskId, byte[] data, DelayTaskRecord record) {
+		if (closed) {
+			throw new IllegalStateException("delay task wal closed");
+		}
+
+		byte[] frame = frame(type, data);
+		if (frame.length > segmentSize) {
+			throw new IllegalArgumentException("delay task record too large, taskId: " + taskId);
+		}
+
+		long seq;
+		lock.lock();
+		try {
+			if (buffer.remaining() < frame.length) {
+				rotate();
+			}
+			buffer.put(frame);
+			if (type == SCHEDULE) {
+				live.put(taskId, new Live(segment, record));
+			} else {
+				live.remove(taskId);
+			}
+			seq = written + frame.length;
+			written = seq;
+		} finally {
+			lock.unlock();
+		}
+		return seq;
+	}
+
+	/**
+	 * 刷盘线程,每次刷盘覆盖此前全部写入(组提交)
+	 **/
+	private void flushLoop() {
+		while (true) {
+			synchronized (flushMonitor) {
+				try {
+					while (!closed && written == flushed) {
+						flushMonitor.wait();
+					}
+				} catch (InterruptedException ex) {
+					return;
+				}
+				if (closed) {
+					return;
+				}
+			}
+
+			long target;
+			MappedByteBuffer buf;
+			lock.lock();
+			try {
+				target = written;
+				buf = buffer;
+			} finally {
+				lock.unlock();
+			}
+			buf.force();
+
+			synchronized (flushMonitor) {
+				flushed = target;
+				flushMonitor.notifyAll();
+			}
+		}
+	}
+
+	private void compactQuietly() {
+		try {
+			compact();
+		} catch (Exception ex) {
+			LOGGER.warn("compact", "延迟任务预写日志压缩失败, ex: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * 封存当前段并打开下一段,须持有追加锁
+	 **/
+	private void rotate() {
+		buffer.force();
+		segment++;
+		buffer = map(segment);
+	}
+
+	private MappedByteBuffer map(int seg) {
+		try (FileChannel channel = FileChannel.open(path(seg), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	/**
+	 * 回放段文件,遇到未写完或校验失败的记录时停止读取该段
+	 *
+	 * @return 是否为快照段
+	 **/
+	private boolean replay(int seg) throws IOException {
+		boolean snapshot = false;
+		ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path(seg)));
+		while (in.remaining() >= HEADER) {
+			int length = in.getInt();
+			int checksum = in.getInt();
+			if (length <= 0 || length > in.remaining()) {
+				break;
+			}
+			byte[] body = new byte[length];
+			in.get(body);
+			CRC32 crc = new CRC32();
+			crc.update(body);
+			if ((int) crc.getValue() != checksum) {
+				LOGGER.warn("replay", "延迟任务预写日志记录校验失败, segment: " + seg);
+				break;
+			}
+
+			if (body[0] == SCHEDULE) {
+				byte[] data = new byte[length - 1];
+				System.arraycopy(body, 1, data, 0, data.length);
+				DelayTaskRecord record = DelayTaskRecord.decode(data);
+				live.put(record.getTaskId(), new Live(seg, record));
+			} else if (body[0] == COMPLETE) {
+				live.remove(new String(body, 1, length - 1, StandardCharsets.UTF_8));
+			} else if (body[0] == SNAPSHOT) {
+				live.clear();
+				snapshot = true;
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * 目录项落盘,保证重命名先于旧段删除持久化; 不支持打开目录的平台忽略
+	 **/
+	private void forceDir() {
+		try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException ex) {
+			LOGGER.warn("forceDir", "延迟任务预写日志目录刷盘失败, ex: " + ex.getMessage());
+		}
+	}
+
+	private List<Integer> listSegments() throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.map(p -> p.getFileName().toString()).filter(n -> n.endsWith(SUFFIX))
+					.map(n -> Integer.valueOf(n.substring(0, n.length() - SUFFIX.length()))).sorted()
+					.collect(Collectors.toList());
+		}
+	}
+
+	private Path path(int seg) {
+		return dir.resolve(String.format("%010d", seg) + SUFFIX);
+	}
+
+	private static byte[] frame(byte type, byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(type);
+		crc.update(data);
+		return ByteBuffer.allocate(HEADER + 1 + data.length).putInt(1 + data.length).putInt((int) crc.getValue())
+				.put(type).put(data).array();
+	}
+
+	/**
+	 * 待执行任务及其最新记录所在段
+	 **/
+	private static final class Live {
+
+		private final int segment;
+
+		private final DelayTaskRecord record;
+
+		Live(int segment, DelayTaskRecord record) {
+			this.segment = segment;
+			this.record = record;
+		}
+	}
+}
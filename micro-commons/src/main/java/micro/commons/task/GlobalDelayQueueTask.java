@@ -1,59 +1,81 @@
 package micro.commons.task;
 
-import java.util.concurrent.DelayQueue;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
-import org.springframework.scheduling.concurrent.ScheduledExecutorFactoryBean;
-import org.springframework.scheduling.concurrent.ScheduledExecutorTask;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import micro.commons.log.MicroLogger;
 
 /**
- * 全局延迟任务异步处理
- * 
+ * 全局延迟任务异步处理. 单线程哈希时间轮调度,到期后派发到任务声明的线程池; 按任务Id登记,
+ * 覆盖与取消均为O(1). 启用预写日志后,登记、覆盖与完成事件先写入日志,重启时回放恢复待执行任务;
+ * 启用分布式延迟队列后,带任务Id的任务改由Redis调度,到期后由任意节点领取执行
+ *
  * @author gewx
  **/
 public final class GlobalDelayQueueTask {
 
+	private static final MicroLogger LOGGER = new MicroLogger(GlobalDelayQueueTask.class);
+
 	private GlobalDelayQueueTask() {
 	}
 
-	private static final int CORE_SIZE = Runtime.getRuntime().availableProcessors();
+	/**
+	 * 时间轮刻度,单位:毫秒. 延迟任务以秒级为主,10ms精度足够,空闲时每秒仅唤醒100次
+	 **/
+	private static final long TICK_DURATION = 10;
+
+	/**
+	 * 时间轮槽数,一圈约10秒
+	 **/
+	private static final int TICKS_PER_WHEEL = 1024;
 
 	private static final GlobalDelayQueueTask INSTANCE = new GlobalDelayQueueTask();
 
 	private static final GlobalThreadPoolTaskExecutor TASK_POOL = GlobalThreadPoolTaskExecutor.getInstance();
 
-	private static final DelayQueue<AbstractTaskBeanDelayed> DELAY_QUEUE = new DelayQueue<>();
+	/**
+	 * 日志顺序锁数量,须为2的幂
+	 **/
+	private static final int LOG_STRIPES = 64;
 
-	private static final ScheduledExecutorFactoryBean FACTORY = new ScheduledExecutorFactoryBean();
+	/**
+	 * 日志顺序锁,保证同一任务Id的登记状态变更与日志追加顺序一致; 仅包含内存追加,刷盘等待在锁外
+	 **/
+	private static final Object[] LOG_LOCKS = new Object[LOG_STRIPES];
 
 	static {
-		ScheduledExecutorTask task = new ScheduledExecutorTask();
-		task.setDelay(0);
-		task.setFixedRate(false);
-		task.setPeriod(100);
-		task.setRunnable(new Runnable() {
-			@Override
-			public void run() {
-				AbstractTaskBeanDelayed taskBean = null;
-				do {
-					taskBean = DELAY_QUEUE.poll();
-					if (taskBean != null) {
-						TASK_POOL.execute(taskBean);
-					}
-				} while (taskBean != null);
-			}
-		});
-
-		FACTORY.setScheduledExecutorTasks(task);
-		// 调度遇到异常后,调度计划继续执行
-		FACTORY.setContinueScheduledExecutionAfterException(true);
-		FACTORY.setThreadNamePrefix("YOGA_TASK_DELAY");
-		FACTORY.setPoolSize(CORE_SIZE);
-		FACTORY.initialize();
+		for (int i = 0; i < LOG_STRIPES; i++) {
+			LOG_LOCKS[i] = new Object();
+		}
 	}
 
+	private static final HashedWheelTimer TIMER = new HashedWheelTimer(new DefaultThreadFactory("YOGA_TASK_DELAY", true),
+			TICK_DURATION, TimeUnit.MILLISECONDS, TICKS_PER_WHEEL);
+
+	/**
+	 * 待执行任务, key: 任务Id
+	 **/
+	private static final Map<String, Entry> PENDING = new ConcurrentHashMap<>(1024);
+
+	/**
+	 * 预写日志,为null时不持久化
+	 **/
+	private static volatile DelayTaskWal wal;
+
+	/**
+	 * 分布式延迟队列,不为null时带任务Id的任务由其调度
+	 **/
+	private static volatile RedisDelayQueue distributed;
+
 	/**
 	 * 获取单例对象
-	 * 
+	 *
 	 * @author gewx
 	 **/
 	public static GlobalDelayQueueTask getInstance() {
@@ -61,16 +83,171 @@ public final class GlobalDelayQueueTask {
 	}
 
 	/**
-	 * 覆盖任务执行
-	 * 
+	 * 启用预写日志并恢复日志中的待执行任务,未注册恢复器的任务保留在日志中
+	 *
+	 * @author gewx
+	 * @param log       预写日志
+	 * @param restorers 任务恢复器
+	 * @return 恢复的任务数
+	 **/
+	public int recover(DelayTaskWal log, Collection<DelayTaskRestorer> restorers) {
+		Map<String, DelayTaskRestorer> byName = new HashMap<>(restorers.size() * 2);
+		restorers.forEach(restorer -> byName.put(restorer.getTaskName(), restorer));
+
+		wal = log;
+		int recovered = 0;
+		for (DelayTaskRecord record : log.pending()) {
+			DelayTaskRestorer restorer = byName.get(record.getTaskName());
+			if (restorer == null) {
+				LOGGER.warn("recover", "延迟任务未注册恢复器, taskId: " + record.getTaskId() + ", taskName: "
+						+ record.getTaskName());
+				continue;
+			}
+			schedule(restorer.restore(record), null);
+			recovered++;
+		}
+		return recovered;
+	}
+
+	/**
+	 * 停用预写日志,此后的登记不再持久化
+	 **/
+	void detach() {
+		wal = null;
+	}
+
+	/**
+	 * 设置分布式延迟队列,为null时恢复本地调度
+	 **/
+	void distribute(RedisDelayQueue queue) {
+		distributed = queue;
+	}
+
+	/**
+	 * 覆盖任务执行,同一任务Id仅保留最后一次登记; 任务Id为空时不参与覆盖,也不持久化
+	 *
 	 * @author gewx
 	 **/
 	public void compareAndSet(AbstractTaskBeanDelayed taskBean) {
-		if (DELAY_QUEUE.contains(taskBean)) {
-			DELAY_QUEUE.remove(taskBean);
-			DELAY_QUEUE.add(taskBean);
-		} else {
-			DELAY_QUEUE.add(taskBean);
+		RedisDelayQueue queue = distributed;
+		if (queue != null && taskBean.getTaskId() != null) {
+			queue.schedule(taskBean);
+			return;
+		}
+		schedule(taskBean, wal);
+	}
+
+	/**
+	 * 取消任务
+	 *
+	 * @author gewx
+	 * @param taskId 任务Id
+	 * @return 任务未执行且取消成功返回true
+	 **/
+	public boolean cancel(String taskId) {
+		RedisDelayQueue queue = distributed;
+		boolean remote = queue != null && queue.cancel(taskId);
+		DelayTaskWal log = wal;
+		Entry entry;
+		long seq = 0;
+		synchronized (logLock(taskId)) {
+			entry = PENDING.remove(taskId);
+			if (log != null && (entry != null || log.isLive(taskId))) {
+				seq = log.writeComplete(taskId);
+			}
+		}
+		if (entry != null) {
+			entry.cancel();
+		}
+		if (log != null) {
+			log.awaitFlush(seq);
+		}
+		return remote || entry != null;
+	}
+
+	/**
+	 * 本地待执行任务数
+	 *
+	 * @author gewx
+	 * @return 待执行任务数
+	 **/
+	public int size() {
+		return PENDING.size();
+	}
+
+	private static void schedule(AbstractTaskBeanDelayed taskBean, DelayTaskWal log) {
+		long delay = Math.max(taskBean.getDelay(TimeUnit.MILLISECONDS), 0);
+		String taskId = taskBean.getTaskId();
+		if (taskId == null) {
+			TIMER.newTimeout(t -> TASK_POOL.dispatch(taskBean, () -> DelayTaskRetry.run(taskBean)), delay, TimeUnit.MILLISECONDS);
+			return;
+		}
+
+		// 先写日志再登记,最后调度; 写日志失败时登记状态不变. 到期时仅派发仍处于登记状态的任务
+		Entry entry = new Entry();
+		Entry previous;
+		long seq = 0;
+		synchronized (logLock(taskId)) {
+			if (log != null) {
+				seq = log.writeSchedule(DelayTaskRecord.of(taskBean));
+			}
+			previous = PENDING.put(taskId, entry);
+		}
+		if (previous != null) {
+			previous.cancel();
+		}
+		if (log != null) {
+			log.awaitFlush(seq);
+		}
+		entry.timeout = TIMER.newTimeout(t -> {
+			if (PENDING.remove(taskId, entry)) {
+				fire(taskId, taskBean);
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 派发到期任务,异常时按任务的重试策略重新登记; 启用预写日志时,任务执行后未重新登记则记录完成
+	 **/
+	private static void fire(String taskId, AbstractTaskBeanDelayed taskBean) {
+		DelayTaskWal log = wal;
+		if (log == null) {
+			TASK_POOL.dispatch(taskBean, () -> DelayTaskRetry.run(taskBean));
+			return;
+		}
+
+		TASK_POOL.dispatch(taskBean, () -> {
+			try {
+				DelayTaskRetry.run(taskBean);
+			} finally {
+				long seq = 0;
+				synchronized (logLock(taskId)) {
+					if (!PENDING.containsKey(taskId)) {
+						seq = log.writeComplete(taskId);
+					}
+				}
+				log.awaitFlush(seq);
+			}
+		});
+	}
+
+	private static Object logLock(String taskId) {
+		int h = taskId.hashCode();
+		return LOG_LOCKS[(h ^ (h >>> 16)) & (LOG_STRIPES - 1)];
+	}
+
+	/**
+	 * 登记项,同一任务Id被覆盖或取消后不再派发
+	 **/
+	private static final class Entry {
+
+		private volatile Timeout timeout;
+
+		void cancel() {
+			Timeout t = timeout;
+			if (t != null) {
+				t.cancel();
+			}
 		}
 	}
 }
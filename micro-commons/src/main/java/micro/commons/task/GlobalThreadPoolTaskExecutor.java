@@ -2,13 +2,11 @@ package micro.commons.task;
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
-import java.util.concurrent.ThreadPoolExecutor;
-
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 /**
- * 全局任务异步处理
- * 
+ * 全局任务异步处理. 任务按其声明的线程池名称提交到TaskExecutorRegistry中对应的线程池,未声明时使用全局线程池;
+ * 队列按TaskPriority分道,高优先级任务先出队
+ *
  * @author gewx
  **/
 public final class GlobalThreadPoolTaskExecutor {
@@ -16,46 +14,56 @@ public final class GlobalThreadPoolTaskExecutor {
 	private GlobalThreadPoolTaskExecutor() {
 	}
 
-	private static final int CORE_SIZE = Runtime.getRuntime().availableProcessors();
-
-	private static final ThreadPoolTaskExecutor POOLTASKEXECUTOR = new ThreadPoolTaskExecutor();
-
-	static {
-		// 队列深度
-		POOLTASKEXECUTOR.setQueueCapacity(Integer.MAX_VALUE);
-		// 核心线程数
-		POOLTASKEXECUTOR.setCorePoolSize(CORE_SIZE);
-		// 最大线程数
-		POOLTASKEXECUTOR.setMaxPoolSize(CORE_SIZE);
-		// 线程名前缀
-		POOLTASKEXECUTOR.setThreadNamePrefix("ZJGW_TASK_");
-		// discard
-		POOLTASKEXECUTOR.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
-		POOLTASKEXECUTOR.initialize();
-
-		POOLTASKEXECUTOR.getThreadPoolExecutor().prestartAllCoreThreads();
-	}
-
 	private static final GlobalThreadPoolTaskExecutor INSTANCE = new GlobalThreadPoolTaskExecutor();
 
 	public static GlobalThreadPoolTaskExecutor getInstance() {
 		return INSTANCE;
 	}
 
+	/**
+	 * 调整全局线程池参数,运行期生效
+	 *
+	 * @author gewx
+	 * @param corePoolSize       核心线程数
+	 * @param maxPoolSize        最大线程数
+	 * @param queueCapacity      队列容量,缩容时已入队的任务保留
+	 * @param policy             饱和策略
+	 * @param blockTimeoutMillis BLOCK策略等待超时时间,单位:毫秒
+	 * @return void
+	 **/
+	public static void configure(int corePoolSize, int maxPoolSize, int queueCapacity, SaturationPolicy policy,
+			long blockTimeoutMillis) {
+		TaskExecutorRegistry.global().configure(corePoolSize, maxPoolSize, queueCapacity, policy, blockTimeoutMillis);
+	}
+
 	public void execute(AbstractTaskBean taskBean) {
-		POOLTASKEXECUTOR.execute(taskBean);
+		TaskExecutorRegistry.get(taskBean.getPoolName()).execute(taskBean, taskBean.getPriority());
 	}
 
 	public void execute(AbstractTaskBeanDelayed taskBean) {
-		POOLTASKEXECUTOR.execute(taskBean);
+		TaskExecutorRegistry.get(taskBean.getPoolName()).execute(taskBean, taskBean.getPriority());
+	}
+
+	/**
+	 * 派发到期的延迟任务到其声明的线程池,饱和时不在调度线程执行
+	 **/
+	void dispatch(AbstractTaskBeanDelayed taskBean, Runnable runTask) {
+		TaskExecutorRegistry.get(taskBean.getPoolName()).dispatch(runTask, taskBean.getPriority());
 	}
 
 	public void execute(Runnable runTask) {
-		POOLTASKEXECUTOR.execute(runTask);
+		execute(runTask, TaskPriority.NORMAL);
+	}
+
+	public void execute(Runnable runTask, TaskPriority priority) {
+		TaskExecutorRegistry.global().execute(runTask, priority);
+	}
+
+	public void execute(String poolName, Runnable runTask, TaskPriority priority) {
+		TaskExecutorRegistry.get(poolName).execute(runTask, priority);
 	}
 
 	public Future<?> execute(Callable<?> runTask) {
-		Future<?> future = POOLTASKEXECUTOR.submit(runTask);
-		return future;
+		return TaskExecutorRegistry.global().submit(runTask, TaskPriority.NORMAL);
 	}
 }
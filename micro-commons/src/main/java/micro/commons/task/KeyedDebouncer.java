@@ -0,0 +1,293 @@
+package micro.commons.task;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import micro.commons.annotation.ThreadSafe;
+import micro.commons.concurrent.ThreadContextDecorator;
+
+/**
+ * 按键合并执行(防抖/节流). 同一键在静默期内的多次提交合并为一次执行,执行最后一次提交的动作:
+ * <ul>
+ * <li>trailing: 最后一次提交后静默wait毫秒执行</li>
+ * <li>leading: 静默状态下的首次提交立即执行,窗口内后续提交延长窗口</li>
+ * <li>maxWait: 持续提交时,首个待执行动作最多等待maxWait毫秒即执行</li>
+ * </ul>
+ * 节流即leading + trailing + maxWait=wait. 按键查找为O(1),每个键同一时刻只登记一个定时器,提交本身不操作定时器
+ *
+ * @author gewx
+ **/
+@ThreadSafe
+public final class KeyedDebouncer {
+
+	/**
+	 * 时间轮刻度,单位:毫秒
+	 **/
+	private static final long TICK_DURATION = 10;
+
+	/**
+	 * 时间轮槽数
+	 **/
+	private static final int TICKS_PER_WHEEL = 512;
+
+	/**
+	 * 全部合并器共享的时间轮
+	 **/
+	private static final HashedWheelTimer TIMER = new HashedWheelTimer(
+			new DefaultThreadFactory("YOGA_TASK_DEBOUNCE", true), TICK_DURATION, TimeUnit.MILLISECONDS, TICKS_PER_WHEEL);
+
+	/**
+	 * 静默期,单位:毫秒
+	 **/
+	private final long wait;
+
+	/**
+	 * 最长等待时间,单位:毫秒; 0表示不限
+	 **/
+	private final long maxWait;
+
+	private final boolean leading;
+
+	private final boolean trailing;
+
+	/**
+	 * 执行线程池名称
+	 **/
+	private final String poolName;
+
+	/**
+	 * 执行优先级
+	 **/
+	private final TaskPriority priority;
+
+	/**
+	 * 活跃键, key: 合并键
+	 **/
+	private final Map<String, Slot> slots = new ConcurrentHashMap<>(256);
+
+	private KeyedDebouncer(Builder builder) {
+		this.wait = builder.wait;
+		this.maxWait = builder.maxWait;
+		this.leading = builder.leading;
+		this.trailing = builder.trailing;
+		this.poolName = builder.poolName;
+		this.priority = builder.priority;
+	}
+
+	public static Builder newBuilder() {
+		return new Builder();
+	}
+
+	/**
+	 * 提交动作,与同一键的其他提交合并执行
+	 *
+	 * @author gewx
+	 * @param key    合并键,如订单号
+	 * @param action 动作
+	 * @return void
+	 **/
+	public void submit(String key, Runnable action) {
+		Runnable task = ThreadContextDecorator.wrap(action);
+		Runnable[] leadingTask = new Runnable[1];
+		slots.compute(key, (k, slot) -> {
+			long now = System.currentTimeMillis();
+			if (slot == null) {
+				slot = new Slot();
+				if (leading) {
+					leadingTask[0] = task;
+				} else {
+					slot.pend(task, now);
+				}
+				slot.lastAt = now;
+				arm(k, slot, wait);
+				return slot;
+			}
+
+			if (trailing) {
+				slot.pend(task, now);
+			}
+			slot.lastAt = now;
+			return slot;
+		});
+
+		if (leadingTask[0] != null) {
+			TaskExecutorRegistry.get(poolName).execute(leadingTask[0], priority);
+		}
+	}
+
+	/**
+	 * 取消键上待执行的动作
+	 *
+	 * @author gewx
+	 * @param key 合并键
+	 * @return 存在待执行动作返回true
+	 **/
+	public boolean cancel(String key) {
+		Slot slot = slots.remove(key);
+		if (slot == null) {
+			return false;
+		}
+		slot.timeout.cancel();
+		return slot.pending != null;
+	}
+
+	/**
+	 * 活跃键数量
+	 *
+	 * @author gewx
+	 * @return 活跃键数量
+	 **/
+	public int size() {
+		return slots.size();
+	}
+
+	private void arm(String key, Slot slot, long delay) {
+		slot.timeout = TIMER.newTimeout(t -> expire(key, slot), delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 定时器到期: 未到截止时间则按剩余时间重新登记; 否则执行待执行动作,静默期已过时移除该键
+	 **/
+	private void expire(String key, Slot expected) {
+		Runnable[] flushTask = new Runnable[1];
+		slots.computeIfPresent(key, (k, slot) -> {
+			if (slot != expected) {
+				return slot;
+			}
+
+			long now = System.currentTimeMillis();
+			long quietAt = slot.lastAt + wait;
+			long deadline = slot.pending != null && maxWait > 0 ? Math.min(quietAt, slot.pendingAt + maxWait) : quietAt;
+			if (now < deadline) {
+				arm(k, slot, deadline - now);
+				return slot;
+			}
+
+			flushTask[0] = slot.pending;
+			slot.pending = null;
+			if (now >= quietAt) {
+				return null;
+			}
+			arm(k, slot, quietAt - now);
+			return slot;
+		});
+
+		if (flushTask[0] != null) {
+			TaskExecutorRegistry.get(poolName).dispatch(flushTask[0], priority);
+		}
+	}
+
+	/**
+	 * 键状态,仅在ConcurrentHashMap.compute内修改
+	 **/
+	private static final class Slot {
+
+		/**
+		 * 待执行动作
+		 **/
+		private volatile Runnable pending;
+
+		/**
+		 * 首个待执行动作的提交时间戳
+		 **/
+		private long pendingAt;
+
+		/**
+		 * 最后一次提交时间戳
+		 **/
+		private long lastAt;
+
+		private volatile Timeout timeout;
+
+		void pend(Runnable task, long now) {
+			if (pending == null) {
+				pendingAt = now;
+			}
+			pending = task;
+		}
+	}
+
+	public static final class Builder {
+
+		private long wait;
+
+		private long maxWait;
+
+		private boolean leading;
+
+		private boolean trailing;
+
+		private String poolName;
+
+		private TaskPriority priority;
+
+		private Builder() {
+			this.wait = 1000;
+			this.maxWait = 0;
+			this.leading = false;
+			this.trailing = true;
+			this.priority = TaskPriority.NORMAL;
+		}
+
+		/**
+		 * 静默期,单位:毫秒
+		 **/
+		public Builder waitMillis(long wait) {
+			this.wait = wait;
+			return this;
+		}
+
+		/**
+		 * 最长等待时间,单位:毫秒; 0表示不限,小于静默期时按静默期处理
+		 **/
+		public Builder maxWait(long maxWait) {
+			this.maxWait = maxWait;
+			return this;
+		}
+
+		public Builder leading(boolean leading) {
+			this.leading = leading;
+			return this;
+		}
+
+		public Builder trailing(boolean trailing) {
+			this.trailing = trailing;
+			return this;
+		}
+
+		/**
+		 * 节流: 窗口首次提交立即执行,窗口内后续提交每wait毫秒至多执行一次
+		 **/
+		public Builder throttle(long wait) {
+			this.wait = wait;
+			this.maxWait = wait;
+			this.leading = true;
+			this.trailing = true;
+			return this;
+		}
+
+		public Builder poolName(String poolName) {
+			this.poolName = poolName;
+			return this;
+		}
+
+		public Builder priority(TaskPriority priority) {
+			this.priority = priority;
+			return this;
+		}
+
+		public KeyedDebouncer build() {
+			if (wait <= 0 || maxWait < 0 || (!leading && !trailing)) {
+				throw new IllegalArgumentException("debounce wait must be positive and leading or trailing enabled");
+			}
+			if (maxWait > 0) {
+				maxWait = Math.max(maxWait, wait);
+			}
+			return new KeyedDebouncer(this);
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package micro.commons.task;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import micro.commons.annotation.ThreadSafe;
+
+/**
+ * 内存死信存储,超出容量时淘汰最早的死信. 任务Id为空的死信以对象标识存储
+ *
+ * @author gewx
+ **/
+@ThreadSafe
+public final class MemoryDeadLetterStore implements DeadLetterStore {
+
+	/**
+	 * 容量上限
+	 **/
+	private final int capacity;
+
+	private final Map<Object, DeadLetter> letters = new LinkedHashMap<>(64);
+
+	public MemoryDeadLetterStore(int capacity) {
+		this.capacity = capacity;
+	}
+
+	@Override
+	public synchronized void add(DeadLetter deadLetter) {
+		String taskId = deadLetter.getRecord().getTaskId();
+		Object key = taskId == null ? new Object() : taskId;
+		letters.remove(key);
+		letters.put(key, deadLetter);
+		Iterator<DeadLetter> it = letters.values().iterator();
+		while (letters.size() > capacity && it.hasNext()) {
+			it.next();
+			it.remove();
+		}
+	}
+
+	@Override
+	public synchronized List<DeadLetter> list() {
+		return new ArrayList<>(letters.values());
+	}
+
+	@Override
+	public synchronized DeadLetter remove(String taskId) {
+		return letters.remove(taskId);
+	}
+}
@@ -0,0 +1,228 @@
+package micro.commons.task;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.Assert;
+
+import micro.commons.annotation.ThreadSafe;
+import micro.commons.concurrent.ThreadContextDecorator;
+import micro.commons.metrics.ExecutorMetrics;
+
+/**
+ * 命名线程池,独立的线程、优先级分道队列与指标,由TaskExecutorRegistry管理. 饱和时按SaturationPolicy处理
+ *
+ * @author gewx
+ **/
+@ThreadSafe
+public final class NamedTaskExecutor {
+
+	/**
+	 * 线程池名称
+	 **/
+	private final String name;
+
+	/**
+	 * 优先级分道队列
+	 **/
+	private final PriorityLaneQueue queue;
+
+	private final ThreadPoolTaskExecutor executor;
+
+	private final ExecutorMetrics metrics;
+
+	/**
+	 * 饱和策略
+	 **/
+	private volatile SaturationPolicy saturationPolicy;
+
+	/**
+	 * BLOCK策略等待队列空位的超时时间,单位:毫秒
+	 **/
+	private volatile long blockTimeout;
+
+	NamedTaskExecutor(String name, String threadNamePrefix, int corePoolSize, int maxPoolSize, int queueCapacity,
+			SaturationPolicy policy, long blockTimeoutMillis) {
+		check(corePoolSize, maxPoolSize, queueCapacity, policy);
+		this.name = name;
+		this.queue = new PriorityLaneQueue(queueCapacity);
+		this.saturationPolicy = policy;
+		this.blockTimeout = blockTimeoutMillis;
+		this.executor = new ThreadPoolTaskExecutor() {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected BlockingQueue<Runnable> createQueue(int capacity) {
+				return queue;
+			}
+		};
+		this.metrics = ExecutorMetrics.register(name + "Task", executor);
+
+		// 队列深度
+		executor.setQueueCapacity(queueCapacity);
+		// 核心线程数
+		executor.setCorePoolSize(corePoolSize);
+		// 最大线程数
+		executor.setMaxPoolSize(maxPoolSize);
+		// 线程名前缀
+		executor.setThreadNamePrefix(threadNamePrefix);
+		// 饱和策略; 任务在提交时包装(传递MDC、Feign请求头与Shiro主体,采集指标),队列据此识别优先级
+		executor.setRejectedExecutionHandler(metrics.decorate(this::saturated));
+		executor.initialize();
+
+		executor.getThreadPoolExecutor().prestartAllCoreThreads();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * 调整线程池参数,运行期生效
+	 *
+	 * @author gewx
+	 * @param corePoolSize       核心线程数
+	 * @param maxPoolSize        最大线程数
+	 * @param queueCapacity      队列容量,缩容时已入队的任务保留
+	 * @param policy             饱和策略
+	 * @param blockTimeoutMillis BLOCK策略等待超时时间,单位:毫秒
+	 * @return void
+	 **/
+	public synchronized void configure(int corePoolSize, int maxPoolSize, int queueCapacity, SaturationPolicy policy,
+			long blockTimeoutMillis) {
+		check(corePoolSize, maxPoolSize, queueCapacity, policy);
+		if (maxPoolSize >= executor.getCorePoolSize()) {
+			executor.setMaxPoolSize(maxPoolSize);
+			executor.setCorePoolSize(corePoolSize);
+		} else {
+			executor.setCorePoolSize(corePoolSize);
+			executor.setMaxPoolSize(maxPoolSize);
+		}
+		queue.setCapacity(queueCapacity);
+		saturationPolicy = policy;
+		blockTimeout = blockTimeoutMillis;
+		executor.getThreadPoolExecutor().prestartAllCoreThreads();
+	}
+
+	/**
+	 * 提交任务
+	 *
+	 * @author gewx
+	 * @param task     任务
+	 * @param priority 优先级,为null时按NORMAL处理
+	 * @return void
+	 **/
+	public void execute(Runnable task, TaskPriority priority) {
+		executor.execute(new PrioritizedTask(priority, metrics.decorate(ThreadContextDecorator.wrap(task))));
+	}
+
+	/**
+	 * 由调度线程派发任务. 饱和时不在调度线程执行也不阻塞: DISCARD策略丢弃,其余策略忽略容量上限入队
+	 *
+	 * @author gewx
+	 * @param task     任务
+	 * @param priority 优先级,为null时按NORMAL处理
+	 * @return void
+	 **/
+	void dispatch(Runnable task, TaskPriority priority) {
+		executor.execute(new PrioritizedTask(priority, metrics.decorate(ThreadContextDecorator.wrap(task)), true));
+	}
+
+	/**
+	 * 提交有返回值的任务
+	 *
+	 * @author gewx
+	 * @param task     任务
+	 * @param priority 优先级,为null时按NORMAL处理
+	 * @return 任务结果
+	 **/
+	public <T> Future<T> submit(Callable<T> task, TaskPriority priority) {
+		RejectableFutureTask<T> future = new RejectableFutureTask<>(task);
+		executor.execute(new PrioritizedTask(priority, metrics.decorate(ThreadContextDecorator.wrap(future)), false,
+				() -> future.reject(new RejectedExecutionException(name + " saturated, task discarded"))));
+		return future;
+	}
+
+	/**
+	 * 关闭线程池,已入队的任务执行完毕后退出
+	 *
+	 * @author gewx
+	 * @return void
+	 **/
+	void shutdown() {
+		executor.shutdown();
+	}
+
+	private static void check(int corePoolSize, int maxPoolSize, int queueCapacity, SaturationPolicy policy) {
+		Assert.isTrue(corePoolSize > 0 && corePoolSize <= maxPoolSize, "corePoolSize/maxPoolSize invalid");
+		Assert.isTrue(queueCapacity > 0, "queueCapacity must be positive");
+		Assert.notNull(policy, "policy must not be null");
+	}
+
+	/**
+	 * 线程池饱和处理,线程池已关闭时丢弃任务; 丢弃的有返回值任务以RejectedExecutionException结束
+	 **/
+	private void saturated(Runnable task, ThreadPoolExecutor pool) {
+		if (pool.isShutdown()) {
+			discard(task);
+			return;
+		}
+
+		if (task instanceof PrioritizedTask && ((PrioritizedTask) task).isEnqueueOnly()) {
+			if (saturationPolicy != SaturationPolicy.DISCARD) {
+				queue.forceOffer(task);
+			} else {
+				discard(task);
+			}
+			return;
+		}
+
+		switch (saturationPolicy) {
+		case CALLER_RUNS:
+			task.run();
+			break;
+		case BLOCK:
+			boolean queued;
+			try {
+				queued = pool.getQueue().offer(task, blockTimeout, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException(name + " interrupted while waiting for queue space", ex);
+			}
+			if (!queued) {
+				throw new RejectedExecutionException(name + " queue full, waited " + blockTimeout + "ms");
+			}
+			break;
+		default:
+			discard(task);
+			break;
+		}
+	}
+
+	private static void discard(Runnable task) {
+		if (task instanceof PrioritizedTask) {
+			((PrioritizedTask) task).discard();
+		}
+	}
+
+	/**
+	 * 可由饱和处理异常结束的FutureTask,避免丢弃后调用方get永久阻塞
+	 **/
+	private static final class RejectableFutureTask<T> extends FutureTask<T> {
+
+		RejectableFutureTask(Callable<T> callable) {
+			super(callable);
+		}
+
+		void reject(RejectedExecutionException ex) {
+			setException(ex);
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package micro.commons.task;
+
+/**
+ * 携带优先级的任务,由PriorityLaneQueue按优先级分道
+ *
+ * @author gewx
+ **/
+final class PrioritizedTask implements Runnable {
+
+	private final TaskPriority priority;
+
+	private final Runnable task;
+
+	/**
+	 * 饱和时只入队不在提交线程执行,用于调度线程派发的任务
+	 **/
+	private final boolean enqueueOnly;
+
+	/**
+	 * 任务被丢弃时的回调,可为null
+	 **/
+	private final Runnable onDiscard;
+
+	PrioritizedTask(TaskPriority priority, Runnable task) {
+		this(priority, task, false, null);
+	}
+
+	PrioritizedTask(TaskPriority priority, Runnable task, boolean enqueueOnly) {
+		this(priority, task, enqueueOnly, null);
+	}
+
+	PrioritizedTask(TaskPriority priority, Runnable task, boolean enqueueOnly, Runnable onDiscard) {
+		this.priority = priority == null ? TaskPriority.NORMAL : priority;
+		this.task = task;
+		this.enqueueOnly = enqueueOnly;
+		this.onDiscard = onDiscard;
+	}
+
+	TaskPriority getPriority() {
+		return priority;
+	}
+
+	boolean isEnqueueOnly() {
+		return enqueueOnly;
+	}
+
+	/**
+	 * 任务被丢弃,通知提交方
+	 **/
+	void discard() {
+		if (onDiscard != null) {
+			onDiscard.run();
+		}
+	}
+
+	@Override
+	public void run() {
+		task.run();
+	}
+}
@@ -0,0 +1,327 @@
+package micro.commons.task;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import micro.commons.annotation.ThreadSafe;
+
+/**
+ * 按优先级分道的有界阻塞队列. 每个优先级一条先进先出通道,出队时依次检查高优先级通道; 全部通道共享容量上限,
+ * 容量可在运行期调整. 非PrioritizedTask任务按NORMAL处理
+ *
+ * @author gewx
+ **/
+@ThreadSafe
+final class PriorityLaneQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition notEmpty = lock.newCondition();
+
+	private final Condition notFull = lock.newCondition();
+
+	/**
+	 * 优先级通道,下标为TaskPriority序号
+	 **/
+	private final List<ArrayDeque<Runnable>> lanes;
+
+	/**
+	 * 容量上限
+	 **/
+	private int capacity;
+
+	/**
+	 * 元素数量
+	 **/
+	private int count;
+
+	PriorityLaneQueue(int capacity) {
+		this.capacity = capacity;
+		this.lanes = new ArrayList<>(TaskPriority.values().length);
+		for (int i = 0; i < TaskPriority.values().length; i++) {
+			lanes.add(new ArrayDeque<>());
+		}
+	}
+
+	/**
+	 * 调整容量上限,缩容时已入队的任务保留
+	 *
+	 * @author gewx
+	 * @param capacity 容量上限
+	 * @return void
+	 **/
+	void setCapacity(int capacity) {
+		lock.lock();
+		try {
+			this.capacity = capacity;
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean offer(Runnable task) {
+		Objects.requireNonNull(task);
+		lock.lock();
+		try {
+			if (count >= capacity) {
+				return false;
+			}
+			enqueue(task);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 忽略容量上限入队
+	 *
+	 * @author gewx
+	 * @param task 任务
+	 * @return void
+	 **/
+	void forceOffer(Runnable task) {
+		Objects.requireNonNull(task);
+		lock.lock();
+		try {
+			enqueue(task);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean offer(Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+		Objects.requireNonNull(task);
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while (count >= capacity) {
+				if (nanos <= 0) {
+					return false;
+				}
+				nanos = notFull.awaitNanos(nanos);
+			}
+			enqueue(task);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void put(Runnable task) throws InterruptedException {
+		Objects.requireNonNull(task);
+		lock.lockInterruptibly();
+		try {
+			while (count >= capacity) {
+				notFull.await();
+			}
+			enqueue(task);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Runnable poll() {
+		lock.lock();
+		try {
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while (count == 0) {
+				if (nanos <= 0) {
+					return null;
+				}
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Runnable take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while (count == 0) {
+				notEmpty.await();
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Runnable peek() {
+		lock.lock();
+		try {
+			for (ArrayDeque<Runnable> lane : lanes) {
+				Runnable task = lane.peekFirst();
+				if (task != null) {
+					return task;
+				}
+			}
+			return null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		lock.lock();
+		try {
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int remainingCapacity() {
+		lock.lock();
+		try {
+			return Math.max(capacity - count, 0);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		lock.lock();
+		try {
+			for (ArrayDeque<Runnable> lane : lanes) {
+				if (lane.remove(o)) {
+					count--;
+					notFull.signal();
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void clear() {
+		lock.lock();
+		try {
+			lanes.forEach(ArrayDeque::clear);
+			count = 0;
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int drainTo(Collection<? super Runnable> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection<? super Runnable> c, int maxElements) {
+		lock.lock();
+		try {
+			int n = 0;
+			Runnable task;
+			while (n < maxElements && (task = dequeue()) != null) {
+				c.add(task);
+				n++;
+			}
+			return n;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 快照迭代器,按出队顺序遍历,remove作用于队列
+	 **/
+	@Override
+	public Iterator<Runnable> iterator() {
+		List<Runnable> snapshot;
+		lock.lock();
+		try {
+			snapshot = new ArrayList<>(count);
+			lanes.forEach(snapshot::addAll);
+		} finally {
+			lock.unlock();
+		}
+
+		Iterator<Runnable> iterator = snapshot.iterator();
+		return new Iterator<Runnable>() {
+
+			private Runnable last;
+
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public Runnable next() {
+				last = iterator.next();
+				return last;
+			}
+
+			@Override
+			public void remove() {
+				if (last == null) {
+					throw new IllegalStateException();
+				}
+				PriorityLaneQueue.this.remove(last);
+				last = null;
+			}
+		};
+	}
+
+	private static int lane(Runnable task) {
+		TaskPriority priority = task instanceof PrioritizedTask ? ((PrioritizedTask) task).getPriority()
+				: TaskPriority.NORMAL;
+		return priority.ordinal();
+	}
+
+	private void enqueue(Runnable task) {
+		lanes.get(lane(task)).addLast(task);
+		count++;
+		notEmpty.signal();
+	}
+
+	private Runnable dequeue() {
+		for (ArrayDeque<Runnable> lane : lanes) {
+			Runnable task = lane.pollFirst();
+			if (task != null) {
+				count--;
+				notFull.signal();
+				return task;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,322 @@
+package micro.commons.task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import micro.commons.annotation.ThreadSafe;
+import micro.commons.log.MicroLogger;
+
+/**
+ * Redis分布式延迟队列. 任务Id按到期时间存入有序集合,任务记录存入哈希; 各节点轮询时由Lua脚本原子地批量领取到期任务,
+ * 移入本节点处理集合(分值为可见性超时截止时间),执行完成后登记待确认,由轮询线程在下次领取前批量确认删除.
+ * 节点宕机或执行超时的任务由回收脚本放回队列,由任意节点重新领取. 任务执行体由DelayTaskRestorer按任务名称重建.
+ * REMARKS: 回收脚本动态拼接处理集合键,仅支持单机/主从Redis
+ *
+ * @author gewx
+ **/
+@ThreadSafe
+public final class RedisDelayQueue {
+
+	private static final MicroLogger LOGGER = new MicroLogger(RedisDelayQueue.class);
+
+	/**
+	 * 登记脚本: 写入任务记录并按到期时间入队. ARGV[1]为任务Id,ARGV[2]为到期时间戳,ARGV[3]为任务记录
+	 **/
+	private static final RedisScript<Long> SCHEDULE_SCRIPT = new DefaultRedisScript<>(
+			"redis.call('hset', KEYS[2], ARGV[1], ARGV[3]); return redis.call('zadd', KEYS[1], ARGV[2], ARGV[1])",
+			Long.class);
+
+	/**
+	 * 取消脚本: 移出队列与各节点处理集合并删除任务记录,返回是否移出队列. KEYS[1]队列,KEYS[2]任务记录,KEYS[3]节点集合;
+	 * ARGV[1]任务Id,ARGV[2]处理集合键前缀
+	 **/
+	private static final RedisScript<Long> CANCEL_SCRIPT = new DefaultRedisScript<>(
+			"redis.call('hdel', KEYS[2], ARGV[1]); "
+					+ "for _, node in ipairs(redis.call('smembers', KEYS[3])) do redis.call('zrem', ARGV[2] .. node, ARGV[1]) end; "
+					+ "return redis.call('zrem', KEYS[1], ARGV[1])",
+			Long.class);
+
+	/**
+	 * 领取脚本: 批量取出到期任务移入本节点处理集合,返回[任务Id, 任务记录, ...].
+	 * KEYS[1]队列,KEYS[2]处理集合,KEYS[3]任务记录,KEYS[4]节点集合; ARGV[1]当前时间戳,ARGV[2]批量,ARGV[3]可见性截止时间,ARGV[4]节点Id
+	 **/
+	@SuppressWarnings("rawtypes")
+	private static final RedisScript<List> CLAIM_SCRIPT = new DefaultRedisScript<>(
+			"local ids = redis.call('zrangebyscore', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2]); "
+					+ "if #ids == 0 then return {} end; "
+					+ "redis.call('zrem', KEYS[1], unpack(ids)); redis.call('sadd', KEYS[4], ARGV[4]); "
+					+ "local result = {}; for i, id in ipairs(ids) do redis.call('zadd', KEYS[2], ARGV[3], id); "
+					+ "result[#result + 1] = id; result[#result + 1] = redis.call('hget', KEYS[3], id) or '' end; "
+					+ "return result",
+			List.class);
+
+	/**
+	 * 确认脚本: 批量移出本节点处理集合,任务记录存在且未重新登记时删除任务记录. ARGV为任务Id
+	 **/
+	private static final RedisScript<Long> ACK_SCRIPT = new DefaultRedisScript<>(
+			"for _, id in ipairs(ARGV) do redis.call('zrem', KEYS[1], id); "
+					+ "if redis.call('hexists', KEYS[3], id) == 1 and not redis.call('zscore', KEYS[2], id) then "
+					+ "redis.call('hdel', KEYS[3], id) end end; return #ARGV",
+			Long.class);
+
+	/**
+	 * 单次确认上限
+	 **/
+	private static final int ACK_BATCH = 512;
+
+	/**
+	 * 回收脚本: 将各节点处理集合中可见性超时的任务放回队列,任务记录已删除(已取消)的任务直接移出; 清理空节点.
+	 * KEYS[1]节点集合,KEYS[2]队列,KEYS[3]任务记录; ARGV[1]当前时间戳,ARGV[2]处理集合键前缀,ARGV[3]单节点回收上限
+	 **/
+	private static final RedisScript<Long> REAP_SCRIPT = new DefaultRedisScript<>(
+			"local moved = 0; for _, node in ipairs(redis.call('smembers', KEYS[1])) do local key = ARGV[2] .. node; "
+					+ "local ids = redis.call('zrangebyscore', key, '-inf', ARGV[1], 'LIMIT', 0, ARGV[3]); "
+					+ "for _, id in ipairs(ids) do redis.call('zrem', key, id); "
+					+ "if redis.call('hexists', KEYS[3], id) == 1 and not redis.call('zscore', KEYS[2], id) then "
+					+ "redis.call('zadd', KEYS[2], ARGV[1], id); moved = moved + 1 end end; "
+					+ "if redis.call('exists', key) == 0 then redis.call('srem', KEYS[1], node) end end; return moved",
+			Long.class);
+
+	/**
+	 * 无恢复器任务的重新入队延迟,单位:毫秒
+	 **/
+	private static final long REQUEUE_DELAY = 1000;
+
+	private final RedisTemplate<String, String> redisTemplate;
+
+	private final GlobalThreadPoolTaskExecutor taskPool = GlobalThreadPoolTaskExecutor.getInstance();
+
+	/**
+	 * 节点Id
+	 **/
+	private final String nodeId;
+
+	private final String queueKey;
+
+	private final String dataKey;
+
+	private final String nodesKey;
+
+	private final String processingPrefix;
+
+	private final String processingKey;
+
+	/**
+	 * 单次领取数量
+	 **/
+	private final int batchSize;
+
+	/**
+	 * 可见性超时,单位:毫秒
+	 **/
+	private final long visibilityTimeout;
+
+	/**
+	 * 任务恢复器, key: 任务名称
+	 **/
+	private final Map<String, DelayTaskRestorer> restorers = new HashMap<>(16);
+
+	/**
+	 * 待确认任务Id
+	 **/
+	private final Queue<String> acks = new ConcurrentLinkedQueue<>();
+
+	private final ScheduledExecutorService poller;
+
+	/**
+	 * 创建并启动轮询
+	 *
+	 * @author gewx
+	 * @param redisTemplate     redis客户端
+	 * @param keyPrefix         键前缀
+	 * @param nodeId            节点Id
+	 * @param batchSize         单次领取数量
+	 * @param pollInterval      轮询间隔,单位:毫秒
+	 * @param visibilityTimeout 可见性超时,单位:毫秒
+	 * @param reapInterval      回收间隔,单位:毫秒
+	 * @param restorers         任务恢复器
+	 **/
+	public RedisDelayQueue(RedisTemplate<String, String> redisTemplate, String keyPrefix, String nodeId, int batchSize,
+			long pollInterval, long visibilityTimeout, long reapInterval, Collection<DelayTaskRestorer> restorers) {
+		this.redisTemplate = redisTemplate;
+		this.nodeId = nodeId;
+		this.queueKey = keyPrefix + ":queue";
+		this.dataKey = keyPrefix + ":data";
+		this.nodesKey = keyPrefix + ":nodes";
+		this.processingPrefix = keyPrefix + ":processing:";
+		this.processingKey = processingPrefix + nodeId;
+		this.batchSize = batchSize;
+		this.visibilityTimeout = visibilityTimeout;
+		restorers.forEach(restorer -> this.restorers.put(restorer.getTaskName(), restorer));
+
+		this.poller = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("YOGA_TASK_DELAY_REDIS", true));
+		this.poller.scheduleWithFixedDelay(this::poll, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+		this.poller.scheduleWithFixedDelay(this::reap, reapInterval, reapInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 登记或覆盖任务
+	 *
+	 * @author gewx
+	 * @param taskBean 任务,任务Id不能为空
+	 * @return void
+	 **/
+	public void schedule(AbstractTaskBeanDelayed taskBean) {
+		if (StringUtils.isBlank(taskBean.getTaskId())) {
+			throw new IllegalArgumentException("distributed delay task requires taskId");
+		}
+		String record = Base64.getEncoder().encodeToString(DelayTaskRecord.of(taskBean).encode());
+		redisTemplate.execute(SCHEDULE_SCRIPT, Arrays.asList(queueKey, dataKey), taskBean.getTaskId(),
+				String.valueOf(taskBean.getExpire()), record);
+	}
+
+	/**
+	 * 取消任务. 已被领取正在执行的任务不中断,但不会因可见性超时被重新执行
+	 *
+	 * @author gewx
+	 * @param taskId 任务Id
+	 * @return 任务在队列中且取消成功返回true
+	 **/
+	public boolean cancel(String taskId) {
+		Long removed = redisTemplate.execute(CANCEL_SCRIPT, Arrays.asList(queueKey, dataKey, nodesKey), taskId,
+				processingPrefix);
+		return removed != null && removed > 0;
+	}
+
+	/**
+	 * 停止轮询并确认已执行完的任务,已领取未执行完的任务在可见性超时后由其他节点重新领取
+	 *
+	 * @author gewx
+	 * @return void
+	 **/
+	public void shutdown() {
+		poller.shutdown();
+		try {
+			poller.awaitTermination(visibilityTimeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		flushAcks();
+	}
+
+	/**
+	 * 确认已执行完的任务,再批量领取到期任务,领满一批时立即继续领取
+	 **/
+	private void poll() {
+		try {
+			int claimed;
+			do {
+				flushAcks();
+				claimed = claim();
+			} while (claimed >= batchSize && !poller.isShutdown());
+		} catch (RuntimeException ex) {
+			LOGGER.warn("poll", "分布式延迟任务领取异常, ex: " + ex.getMessage());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private int claim() {
+		long now = System.currentTimeMillis();
+		List<Object> result = redisTemplate.execute(CLAIM_SCRIPT,
+				Arrays.asList(queueKey, processingKey, dataKey, nodesKey), String.valueOf(now),
+				String.valueOf(batchSize), String.valueOf(now + visibilityTimeout), nodeId);
+		if (result == null || result.isEmpty()) {
+			return 0;
+		}
+
+		for (int i = 0; i + 1 < result.size(); i += 2) {
+			String taskId = String.valueOf(result.get(i));
+			try {
+				dispatch(taskId, String.valueOf(result.get(i + 1)));
+			} catch (RuntimeException ex) {
+				LOGGER.warn("claim", "分布式延迟任务派发异常,将在可见性超时后重新执行, taskId: " + taskId + ", ex: "
+						+ ex.getMessage());
+			}
+		}
+		return result.size() / 2;
+	}
+
+	private void dispatch(String taskId, String data) {
+		if (data.isEmpty()) {
+			LOGGER.warn("dispatch", "分布式延迟任务记录不存在, taskId: " + taskId);
+			ack(taskId);
+			return;
+		}
+
+		DelayTaskRecord record = DelayTaskRecord.decode(Base64.getDecoder().decode(data));
+		DelayTaskRestorer restorer = restorers.get(record.getTaskName());
+		if (restorer == null) {
+			LOGGER.warn("dispatch", "分布式延迟任务未注册恢复器,重新入队, taskId: " + taskId + ", taskName: "
+					+ record.getTaskName());
+			redisTemplate.execute(SCHEDULE_SCRIPT, Arrays.asList(queueKey, dataKey), taskId,
+					String.valueOf(System.currentTimeMillis() + REQUEUE_DELAY), data);
+			ack(taskId);
+			return;
+		}
+
+		AbstractTaskBeanDelayed taskBean = restorer.restore(record);
+		taskPool.dispatch(taskBean, () -> {
+			try {
+				DelayTaskRetry.run(taskBean);
+			} finally {
+				ack(taskId);
+			}
+		});
+	}
+
+	private void ack(String taskId) {
+		acks.offer(taskId);
+	}
+
+	/**
+	 * 批量确认,每批一次往返; 确认失败的任务在可见性超时后重新执行
+	 **/
+	private void flushAcks() {
+		List<String> batch = new ArrayList<>(Math.min(ACK_BATCH, batchSize));
+		while (true) {
+			String taskId;
+			while (batch.size() < ACK_BATCH && (taskId = acks.poll()) != null) {
+				batch.add(taskId);
+			}
+			if (batch.isEmpty()) {
+				return;
+			}
+
+			try {
+				redisTemplate.execute(ACK_SCRIPT, Arrays.asList(processingKey, queueKey, dataKey), batch.toArray());
+			} catch (RuntimeException ex) {
+				LOGGER.warn("flushAcks", "分布式延迟任务确认异常,将在可见性超时后重新执行, count: " + batch.size() + ", ex: "
+						+ ex.getMessage());
+			}
+			batch.clear();
+		}
+	}
+
+	private void reap() {
+		try {
+			Long moved = redisTemplate.execute(REAP_SCRIPT, Arrays.asList(nodesKey, queueKey, dataKey),
+					String.valueOf(System.currentTimeMillis()), processingPrefix, String.valueOf(batchSize));
+			if (moved != null && moved > 0) {
+				LOGGER.info("reap", "分布式延迟任务可见性超时,重新入队: " + moved);
+			}
+		} catch (RuntimeException ex) {
+			LOGGER.warn("reap", "分布式延迟任务回收异常, ex: " + ex.getMessage());
+		}
+	}
+}
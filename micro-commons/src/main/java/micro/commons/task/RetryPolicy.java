@@ -0,0 +1,77 @@
+package micro.commons.task;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 延迟任务重试策略,任务执行抛出异常时由调度器按策略计算下次重试延迟; 重试次数上限取任务的retryMax,小于等于0时仅由策略决定.
+ * REMARKS: 策略不随任务写入预写日志或Redis记录,重启恢复后须由DelayTaskRestorer重新设置,否则任务失败不再重试
+ *
+ * @author gewx
+ **/
+@FunctionalInterface
+public interface RetryPolicy {
+
+	/**
+	 * 计算下次重试延迟
+	 *
+	 * @author gewx
+	 * @param retryNum      已重试次数
+	 * @param lastDelay     上次重试延迟,首次重试为0,单位:毫秒
+	 * @param elapsedMillis 距首次失败的时间,单位:毫秒
+	 * @return 重试延迟,单位:毫秒; 小于0表示放弃重试
+	 **/
+	long nextDelay(int retryNum, long lastDelay, long elapsedMillis);
+
+	/**
+	 * 固定间隔
+	 *
+	 * @author gewx
+	 * @param delay 重试间隔,单位:毫秒
+	 * @return 重试策略
+	 **/
+	static RetryPolicy fixed(long delay) {
+		return (retryNum, lastDelay, elapsedMillis) -> delay;
+	}
+
+	/**
+	 * 指数退避: initial * multiplier^retryNum,不超过max
+	 *
+	 * @author gewx
+	 * @param initial    首次重试延迟,单位:毫秒
+	 * @param multiplier 倍数
+	 * @param max        最大延迟,单位:毫秒
+	 * @return 重试策略
+	 **/
+	static RetryPolicy exponential(long initial, double multiplier, long max) {
+		return (retryNum, lastDelay, elapsedMillis) -> (long) Math.min(max, initial * Math.pow(multiplier, retryNum));
+	}
+
+	/**
+	 * 去相关抖动: 在[base, 上次延迟*3]内随机取值,不超过cap. 同一时刻失败的任务重试时间相互错开,避免集中冲击下游
+	 *
+	 * @author gewx
+	 * @param base 最小延迟,单位:毫秒
+	 * @param cap  最大延迟,单位:毫秒
+	 * @return 重试策略
+	 **/
+	static RetryPolicy decorrelatedJitter(long base, long cap) {
+		return (retryNum, lastDelay, elapsedMillis) -> {
+			long upper = Math.max(base, lastDelay * 3);
+			return Math.min(cap, upper > base ? ThreadLocalRandom.current().nextLong(base, upper + 1) : base);
+		};
+	}
+
+	/**
+	 * 限制最长重试时间,距首次失败超过该时间(含下次延迟)后放弃重试
+	 *
+	 * @author gewx
+	 * @param maxElapsedMillis 最长重试时间,单位:毫秒
+	 * @return 重试策略
+	 **/
+	default RetryPolicy withMaxElapsed(long maxElapsedMillis) {
+		return (retryNum, lastDelay, elapsedMillis) -> {
+			long delay = nextDelay(retryNum, lastDelay, elapsedMillis);
+			return delay < 0 || elapsedMillis + delay > maxElapsedMillis ? -1 : delay;
+		};
+	}
+}
@@ -0,0 +1,24 @@
+package micro.commons.task;
+
+/**
+ * 线程池饱和(线程数达到上限且队列已满)时的处理策略
+ *
+ * @author gewx
+ **/
+public enum SaturationPolicy {
+
+	/**
+	 * 由提交线程执行,提交方自然减速
+	 **/
+	CALLER_RUNS,
+
+	/**
+	 * 阻塞提交线程等待队列空位,超时后抛出TaskRejectedException
+	 **/
+	BLOCK,
+
+	/**
+	 * 丢弃任务,仅计入拒绝计数; submit返回的Future以RejectedExecutionException结束
+	 **/
+	DISCARD
+}
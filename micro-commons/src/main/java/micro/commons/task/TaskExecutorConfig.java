@@ -0,0 +1,88 @@
+package micro.commons.task;
+
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import micro.commons.log.MicroLogger;
+
+/**
+ * 任务线程池配置,启动时按TaskExecutorProperties调整全局线程池并注册命名线程池; 启用预写日志时回放恢复延迟任务,
+ * 启用分布式延迟队列时延迟任务改由Redis调度
+ *
+ * @author gewx
+ **/
+@Configuration
+@EnableConfigurationProperties(TaskExecutorProperties.class)
+public class TaskExecutorConfig {
+
+	private static final MicroLogger LOGGER = new MicroLogger(TaskExecutorConfig.class);
+
+	private final TaskExecutorProperties properties;
+
+	private final ObjectProvider<DelayTaskRestorer> restorers;
+
+	private final ObjectProvider<RedisTemplate<String, String>> redisTemplate;
+
+	private final ObjectProvider<DeadLetterStore> deadLetterStore;
+
+	private DelayTaskWal wal;
+
+	private RedisDelayQueue redisDelayQueue;
+
+	public TaskExecutorConfig(TaskExecutorProperties properties, ObjectProvider<DelayTaskRestorer> restorers,
+			ObjectProvider<RedisTemplate<String, String>> redisTemplate, ObjectProvider<DeadLetterStore> deadLetterStore) {
+		this.properties = properties;
+		this.restorers = restorers;
+		this.redisTemplate = redisTemplate;
+		this.deadLetterStore = deadLetterStore;
+	}
+
+	@PostConstruct
+	public void init() {
+		TaskExecutorProperties.Pool global = properties.getGlobal();
+		GlobalThreadPoolTaskExecutor.configure(global.getCoreSize(), global.getMaxSize(), global.getQueueCapacity(),
+				global.getPolicy(), global.getBlockTimeout());
+
+		properties.getExecutors()
+				.forEach((name, pool) -> TaskExecutorRegistry.register(name, pool.getCoreSize(), pool.getMaxSize(),
+						pool.getQueueCapacity(), pool.getPolicy(), pool.getBlockTimeout()));
+		deadLetterStore.ifAvailable(DelayTaskRetry::setDeadLetterStore);
+
+		TaskExecutorProperties.Wal config = properties.getWal();
+		if (config.isEnabled()) {
+			wal = DelayTaskWal.open(config.getDir(), config.getSegmentSize(), config.isSync(),
+					config.getCompactInterval());
+			int recovered = GlobalDelayQueueTask.getInstance().recover(wal,
+					restorers.orderedStream().collect(Collectors.toList()));
+			LOGGER.info("init", "延迟任务预写日志已启用, dir: " + config.getDir() + ", recovered: " + recovered);
+		}
+
+		TaskExecutorProperties.Redis redis = properties.getRedis();
+		if (redis.isEnabled()) {
+			redisDelayQueue = new RedisDelayQueue(redisTemplate.getObject(), redis.getKeyPrefix(), redis.getNodeId(),
+					redis.getBatchSize(), redis.getPollInterval(), redis.getVisibilityTimeout(), redis.getReapInterval(),
+					restorers.orderedStream().collect(Collectors.toList()));
+			GlobalDelayQueueTask.getInstance().distribute(redisDelayQueue);
+			LOGGER.info("init", "分布式延迟队列已启用, nodeId: " + redis.getNodeId());
+		}
+	}
+
+	@PreDestroy
+	public void destroy() {
+		if (redisDelayQueue != null) {
+			GlobalDelayQueueTask.getInstance().distribute(null);
+			redisDelayQueue.shutdown();
+		}
+		if (wal != null) {
+			GlobalDelayQueueTask.getInstance().detach();
+			wal.close();
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package micro.commons.task;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * 任务线程池配置元数据, 示例:
+ *
+ * <pre>
+ * micro:
+ *   task:
+ *     global:
+ *       core-size: 8
+ *       queue-capacity: 10000
+ *     executors:
+ *       ftp:
+ *         core-size: 4
+ *         max-size: 4
+ *         queue-capacity: 200
+ *         policy: BLOCK
+ *     wal:
+ *       enabled: true
+ *       dir: /data/micro/delay-wal
+ *     redis:
+ *       enabled: true
+ *       batch-size: 100
+ * </pre>
+ *
+ * @author gewx
+ **/
+@ConfigurationProperties(prefix = "micro.task")
+@Setter
+@Getter
+@ToString
+public class TaskExecutorProperties {
+
+	/**
+	 * 全局线程池
+	 **/
+	private Pool global = new Pool();
+
+	/**
+	 * 命名线程池, key: 线程池名称
+	 **/
+	private Map<String, Pool> executors = new LinkedHashMap<>();
+
+	/**
+	 * 延迟任务预写日志
+	 **/
+	private Wal wal = new Wal();
+
+	/**
+	 * 分布式延迟队列
+	 **/
+	private Redis redis = new Redis();
+
+	@Setter
+	@Getter
+	@ToString
+	public static class Pool {
+
+		/**
+		 * 核心线程数,默认CPU核数
+		 **/
+		private int coreSize = Runtime.getRuntime().availableProcessors();
+
+		/**
+		 * 最大线程数,默认CPU核数
+		 **/
+		private int maxSize = Runtime.getRuntime().availableProcessors();
+
+		/**
+		 * 队列容量,默认10000
+		 **/
+		private int queueCapacity = TaskExecutorRegistry.QUEUE_CAPACITY;
+
+		/**
+		 * 饱和策略: CALLER_RUNS、BLOCK、DISCARD
+		 **/
+		private SaturationPolicy policy = SaturationPolicy.CALLER_RUNS;
+
+		/**
+		 * BLOCK策略等待队列空位的超时时间,单位:毫秒
+		 **/
+		private long blockTimeout = 1000;
+	}
+
+	@Setter
+	@Getter
+	@ToString
+	public static class Wal {
+
+		/**
+		 * 是否持久化延迟任务
+		 **/
+		private boolean enabled;
+
+		/**
+		 * 日志目录
+		 **/
+		private String dir = "./data/delay-wal";
+
+		/**
+		 * 段文件大小,单位:字节
+		 **/
+		private int segmentSize = 64 * 1024 * 1024;
+
+		/**
+		 * 是否等待刷盘完成后返回
+		 **/
+		private boolean sync = true;
+
+		/**
+		 * 压缩间隔,单位:毫秒
+		 **/
+		private long compactInterval = 60000;
+	}
+
+	@Setter
+	@Getter
+	@ToString
+	public static class Redis {
+
+		/**
+		 * 是否启用分布式延迟队列
+		 **/
+		private boolean enabled;
+
+		/**
+		 * 键前缀
+		 **/
+		private String keyPrefix = "micro:delay";
+
+		/**
+		 * 节点Id,默认进程号@主机名
+		 **/
+		private String nodeId = ManagementFactory.getRuntimeMXBean().getName();
+
+		/**
+		 * 单次领取数量
+		 **/
+		private int batchSize = 100;
+
+		/**
+		 * 轮询间隔,单位:毫秒
+		 **/
+		private long pollInterval = 100;
+
+		/**
+		 * 可见性超时,领取后超过该时间未确认的任务重新入队,单位:毫秒
+		 **/
+		private long visibilityTimeout = 300000;
+
+		/**
+		 * 回收间隔,单位:毫秒
+		 **/
+		private long reapInterval = 5000;
+	}
+}
@@ -0,0 +1,125 @@
+package micro.commons.task;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+import micro.commons.annotation.ThreadSafe;
+import micro.commons.log.MicroLogger;
+
+/**
+ * 命名线程池注册表(舱壁隔离). 各线程池线程、队列与指标互相独立,慢任务只会占满自身所在的线程池;
+ * 未指定或未注册的线程池名称使用全局线程池
+ *
+ * @author gewx
+ **/
+@ThreadSafe
+public final class TaskExecutorRegistry {
+
+	private static final MicroLogger LOGGER = new MicroLogger(TaskExecutorRegistry.class);
+
+	private TaskExecutorRegistry() {
+	}
+
+	/**
+	 * 全局线程池名称
+	 **/
+	public static final String GLOBAL = "global";
+
+	private static final int CORE_SIZE = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * 默认队列容量,队列满后按饱和策略处理
+	 **/
+	static final int QUEUE_CAPACITY = 10000;
+
+	/**
+	 * 全局线程池
+	 **/
+	private static final NamedTaskExecutor GLOBAL_EXECUTOR = new NamedTaskExecutor(GLOBAL, "ZJGW_TASK_", CORE_SIZE,
+			CORE_SIZE, QUEUE_CAPACITY, SaturationPolicy.CALLER_RUNS, 1000);
+
+	/**
+	 * 已注册线程池, key: 线程池名称
+	 **/
+	private static final Map<String, NamedTaskExecutor> EXECUTORS = new ConcurrentHashMap<>(16);
+
+	/**
+	 * 已告警的未注册线程池名称
+	 **/
+	private static final Set<String> UNKNOWN = Collections.newSetFromMap(new ConcurrentHashMap<>(16));
+
+	static {
+		EXECUTORS.put(GLOBAL, GLOBAL_EXECUTOR);
+	}
+
+	/**
+	 * 注册线程池,已存在时调整其参数
+	 *
+	 * @author gewx
+	 * @param name               线程池名称
+	 * @param corePoolSize       核心线程数
+	 * @param maxPoolSize        最大线程数
+	 * @param queueCapacity      队列容量
+	 * @param policy             饱和策略
+	 * @param blockTimeoutMillis BLOCK策略等待超时时间,单位:毫秒
+	 * @return 线程池
+	 **/
+	public static NamedTaskExecutor register(String name, int corePoolSize, int maxPoolSize, int queueCapacity,
+			SaturationPolicy policy, long blockTimeoutMillis) {
+		if (StringUtils.isBlank(name)) {
+			throw new IllegalArgumentException("executor name must not be blank");
+		}
+
+		NamedTaskExecutor executor = EXECUTORS.computeIfAbsent(name,
+				key -> new NamedTaskExecutor(key, "ZJGW_TASK_" + key.toUpperCase() + "_", corePoolSize, maxPoolSize,
+						queueCapacity, policy, blockTimeoutMillis));
+		executor.configure(corePoolSize, maxPoolSize, queueCapacity, policy, blockTimeoutMillis);
+		return executor;
+	}
+
+	/**
+	 * 获取线程池
+	 *
+	 * @author gewx
+	 * @param name 线程池名称,为空时返回全局线程池
+	 * @return 线程池,未注册时返回全局线程池
+	 **/
+	public static NamedTaskExecutor get(String name) {
+		if (StringUtils.isBlank(name)) {
+			return GLOBAL_EXECUTOR;
+		}
+
+		NamedTaskExecutor executor = EXECUTORS.get(name);
+		if (executor == null) {
+			if (UNKNOWN.add(name)) {
+				LOGGER.warn("get", "线程池未注册,使用全局线程池, name: " + name);
+			}
+			return GLOBAL_EXECUTOR;
+		}
+		return executor;
+	}
+
+	/**
+	 * 全局线程池
+	 *
+	 * @author gewx
+	 * @return 全局线程池
+	 **/
+	public static NamedTaskExecutor global() {
+		return GLOBAL_EXECUTOR;
+	}
+
+	/**
+	 * 已注册线程池名称
+	 *
+	 * @author gewx
+	 * @return 线程池名称
+	 **/
+	public static Set<String> names() {
+		return Collections.unmodifiableSet(EXECUTORS.keySet());
+	}
+}
@@ -0,0 +1,24 @@
+package micro.commons.task;
+
+/**
+ * 任务优先级,线程池队列按优先级分道,高优先级任务先出队; 同一优先级先进先出
+ *
+ * @author gewx
+ **/
+public enum TaskPriority {
+
+	/**
+	 * 高优先级,如分布式事务补偿
+	 **/
+	HIGH,
+
+	/**
+	 * 普通优先级
+	 **/
+	NORMAL,
+
+	/**
+	 * 低优先级,如消息通知
+	 **/
+	LOW
+}
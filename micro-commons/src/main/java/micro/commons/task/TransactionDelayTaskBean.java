@@ -9,9 +9,24 @@ import org.apache.commons.lang3.builder.HashCodeBuilder;
  * @author gewx
  **/
 public class TransactionDelayTaskBean extends AbstractTaskBeanDelayed {
-	
+
+	/**
+	 * 事务补偿优先执行
+	 **/
+	public TransactionDelayTaskBean() {
+		this.setPriority(TaskPriority.HIGH);
+	}
+
+	/**
+	 * 配置重试策略时重试次数由调度器维护,任务异常后按策略延迟重试
+	 **/
 	@Override
 	public void run() {
+		if (this.getRetryPolicy() != null) {
+			this.getTask().run();
+			return;
+		}
+
 		if (this.getRetryNum() < this.getRetryMax()) {
 			this.setRetryNum(this.getRetryNum() + 1);  
 			this.getTask().run();
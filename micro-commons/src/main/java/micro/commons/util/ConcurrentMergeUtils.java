@@ -3,24 +3,52 @@ package micro.commons.util;
 import static org.apache.commons.collections4.CollectionUtils.isEmpty;
 import static java.util.Collections.emptyList;
 
-import lombok.Getter;
-import lombok.Setter;
-
+import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterators;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import micro.commons.concurrent.ThreadContextDecorator;
 import micro.commons.exception.ConcurrentMergeException;
+import micro.commons.metrics.ExecutorMetrics;
+import org.apache.commons.lang3.ObjectUtils;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureTask;
 
 public final class ConcurrentMergeUtils {
 
@@ -28,15 +56,85 @@ public final class ConcurrentMergeUtils {
 
     private static final ThreadPoolTaskExecutor POOLTASKEXECUTOR = new ThreadPoolTaskExecutor();
 
+    /**
+     * IO型弹性线程池最大线程数(不支持虚拟线程时)
+     **/
+    private static final int IO_POOL_SIZE = 256;
+
+    /**
+     * 当前归并执行器,默认为POOLTASKEXECUTOR
+     **/
+    private static volatile Executor executor = POOLTASKEXECUTOR;
+
+    /**
+     * 等待全部任务完成的超时时间,单位:秒
+     **/
+    private static final long TIMEOUT = 60;
+
+    /**
+     * 分治计算每个核心的目标分片数
+     **/
+    private static final int SPLIT_FACTOR = 8;
+
+    /**
+     * 分治计算队列中待窃取任务超过该值时不再拆分
+     **/
+    private static final int SURPLUS_THRESHOLD = 3;
+
+    private static final MergeOptions DEFAULT_OPTIONS = MergeOptions.newBuilder().deadline(TIMEOUT, TimeUnit.SECONDS)
+            .build();
+
+    /**
+     * 单任务超时计时线程
+     **/
+    private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "CONCURRENT_MERGER_TIMER");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final ForkJoinPool FORKJOINPOOL = new ForkJoinPool(CORE_SIZE, pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("CONCURRENT_MERGER_FORK_" + thread.getPoolIndex());
+        return thread;
+    }, null, false);
+
     static {
         POOLTASKEXECUTOR.setQueueCapacity(Short.MAX_VALUE);
         POOLTASKEXECUTOR.setCorePoolSize(CORE_SIZE * 2);
         POOLTASKEXECUTOR.setMaxPoolSize(CORE_SIZE * 2);
         POOLTASKEXECUTOR.setThreadNamePrefix("CONCURRENT_MERGER_TASK_");
-        POOLTASKEXECUTOR.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+        ExecutorMetrics.instrument("concurrentMerge", POOLTASKEXECUTOR, null, new ThreadPoolExecutor.CallerRunsPolicy());
         POOLTASKEXECUTOR.initialize();
 
         POOLTASKEXECUTOR.getThreadPoolExecutor().prestartAllCoreThreads();
+
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * 替换全局归并执行器,未指定执行器的归并计算与并发执行均提交至该执行器
+     *
+     * @param newExecutor 执行器, null恢复默认线程池
+     * @author gewx
+     **/
+    public static void setExecutor(Executor newExecutor) {
+        executor = newExecutor == null ? POOLTASKEXECUTOR : newExecutor;
+    }
+
+    /**
+     * IO型执行器,适用于阻塞在Feign/DB调用上的大量扇出任务. JVM支持虚拟线程(Java 21+)时每个任务一个虚拟线程,
+     * 否则为按需扩缩的弹性线程池(最大IO_POOL_SIZE,空闲60秒回收,饱和时由调用线程执行)
+     *
+     * <pre>
+     * MergeOptions options = MergeOptions.newBuilder().executor(ConcurrentMergeUtils.ioExecutor()).build();
+     * </pre>
+     *
+     * @return 执行器
+     * @author gewx
+     **/
+    public static Executor ioExecutor() {
+        return IoExecutorHolder.INSTANCE;
     }
 
     /**
@@ -71,129 +169,254 @@ public final class ConcurrentMergeUtils {
             taskCount = taskCount + 1;
         }
 
-        AtomicInteger downCount = new AtomicInteger(taskCount);
-        AtomicBoolean mark = new AtomicBoolean(true);
-        AtomicReference<String> ex = new AtomicReference<>();
-        List<R> mergeList = new ArrayList<>(taskCount * 2);
+        List<Callable<R>> tasks = IntStream.range(0, taskCount).mapToObj(val -> (Callable<R>) () -> {
+            int next = (depth + (depth * val));
+            return execute.apply(result.subList(depth * val, next > result.size() ? result.size() : next));
+        }).collect(Collectors.toList());
+        return merge(tasks, DEFAULT_OPTIONS).getResults();
+    }
 
-        IntStream.range(0, taskCount).forEach(val -> {
-            ListenableFuture<R> future = (ListenableFuture<R>) POOLTASKEXECUTOR.submitListenable(() -> {
-                if (!mark.get()) {
-                    return null;
-                }
-                int next = (depth + (depth * val));
-                List<T> subList = result.subList(depth * val, next > result.size() ? result.size() : next);
-                return execute.apply(subList);
-            });
-
-            future.addCallback(r -> {
-                mergeList.add(r);
-                downCount.decrementAndGet();
-            }, thx -> {
-                ex.set(thx.getMessage());
-                mark.set(false);
-            });
-        });
+    /**
+     * 分治归并计算(工作窃取). 按核数与数据量自适应拆分,空闲线程窃取其他线程的分片,分片结果按数据顺序两两合并
+     *
+     * @param execute  执行器
+     * @param result   待计算数据.只支持List集合
+     * @param combiner 分片结果合并函数,须满足结合律
+     * @return 合并结果, 数据为空返回null
+     * @author gewx
+     **/
+    public static <T, R> R reduce(Function<List<T>, R> execute, List<T> result, BinaryOperator<R> combiner) {
+        return reduce(execute, result, combiner, isEmpty(result) ? 1 : result.size() / (CORE_SIZE * SPLIT_FACTOR));
+    }
 
-        while (true) {
-            if (downCount.intValue() == 0) {
-                break;
-            }
-            if (!mark.get()) {
-                throw new ConcurrentMergeException("归并计算异常, ex: " + ex.get());
-            }
+    /**
+     * 分治归并计算(工作窃取)
+     *
+     * @param execute  执行器
+     * @param result   待计算数据.只支持List集合
+     * @param combiner 分片结果合并函数,须满足结合律
+     * @param depth    最小任务深度,分片数据量不超过该值时不再拆分
+     * @return 合并结果, 数据为空返回null
+     * @author gewx
+     **/
+    public static <T, R> R reduce(Function<List<T>, R> execute, List<T> result, BinaryOperator<R> combiner,
+                                  int depth) {
+        if (isEmpty(result)) {
+            return null;
+        }
+
+        AtomicBoolean mark = new AtomicBoolean(true);
+        ForkJoinTask<R> future = FORKJOINPOOL.submit(new MergeTask<>(ThreadContextDecorator.wrap(execute), result,
+                combiner, Math.max(depth, 1), mark));
+        try {
+            return future.get(TIMEOUT, TimeUnit.SECONDS);
+        } catch (ExecutionException ex) {
+            mark.set(false);
+            throw new ConcurrentMergeException("归并计算异常, ex: " + ex.getCause().getMessage(), ex.getCause());
+        } catch (TimeoutException ex) {
+            mark.set(false);
+            future.cancel(true);
+            throw new ConcurrentMergeException("归并计算异常, 等待超时: " + TIMEOUT + "s");
+        } catch (InterruptedException ex) {
+            mark.set(false);
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ConcurrentMergeException("归并计算异常, 线程中断", ex);
         }
-        return mergeList;
     }
 
     /**
-     * 归并计算
+     * 归并计算,结果按任务顺序输出
      *
      * @param task 任务集合
      * @return 归并结果
      * @author gewx
      **/
-    @SuppressWarnings("unchecked")
+    @SafeVarargs
     public static <R> List<R> calculate(Callable<R>... task) {
-        AtomicInteger downCount = new AtomicInteger(task.length);
-        AtomicBoolean mark = new AtomicBoolean(true);
-        AtomicReference<String> ex = new AtomicReference<>();
-        List<R> mergeList = new ArrayList<>(task.length * 2);
+        return merge(Arrays.asList(task), DEFAULT_OPTIONS).getResults();
+    }
 
-        IntStream.range(0, task.length).forEach(index -> {
-            ListenableFuture<R> future = (ListenableFuture<R>) POOLTASKEXECUTOR.submitListenable(() -> {
-                if (!mark.get()) {
-                    return null;
-                }
-                return task[index].call();
-            });
-
-            future.addCallback(r -> {
-                mergeList.add(r);
-                downCount.decrementAndGet();
-            }, thx -> {
-                ex.set(thx.getMessage());
-                mark.set(false);
-            });
-        });
+    /**
+     * 基于任务顺序输出的归并计算,与calculate(Callable...)一致
+     *
+     * @param task 任务集合
+     * @return 归并结果
+     * @author gewx
+     **/
+    @SafeVarargs
+    public static <R> List<R> naturalOrderCalculate(Callable<R>... task) {
+        return merge(Arrays.asList(task), DEFAULT_OPTIONS).getResults();
+    }
 
-        while (true) {
-            if (downCount.intValue() == 0) {
-                break;
-            }
-            if (!mark.get()) {
-                throw new ConcurrentMergeException("归并计算异常, ex: " + ex.get());
-            }
-        }
-        return mergeList;
+    /**
+     * 按选项执行归并计算,结果按任务顺序输出. 失败策略为FAIL_FAST时任一任务失败或超时抛出异常,
+     * 其余策略返回已完成的结果并记录失败任务下标
+     *
+     * @param options 归并计算选项
+     * @param tasks   任务集合
+     * @return 归并结果
+     * @author gewx
+     **/
+    public static <R> MergeResult<R> calculate(MergeOptions options, List<Callable<R>> tasks) {
+        return merge(tasks, options);
     }
 
     /**
-     * 基于任务顺序输出的归并计算
+     * 按选项执行归并计算,结果按任务顺序输出
      *
-     * @param task 任务集合
+     * @param options 归并计算选项
+     * @param task    任务集合
+     * @return 归并结果
+     * @author gewx
+     **/
+    @SafeVarargs
+    public static <R> MergeResult<R> calculate(MergeOptions options, Callable<R>... task) {
+        return merge(Arrays.asList(task), options);
+    }
+
+    /**
+     * 归并计算. 每个任务的结果写入预分配数组中与任务下标对应的槽位,无需加锁与排序即按任务顺序输出;
+     * 配置单任务超时时,任务开始执行后由计时线程到期取消
+     *
+     * @param tasks   任务集合
+     * @param options 归并计算选项
      * @return 归并结果
      * @author gewx
      **/
     @SuppressWarnings("unchecked")
-    public static <R> List<R> naturalOrderCalculate(Callable<R>... task) {
-        AtomicInteger downCount = new AtomicInteger(task.length);
+    private static <R> MergeResult<R> merge(List<Callable<R>> tasks, MergeOptions options) {
+        Object[] slots = new Object[tasks.size()];
         AtomicBoolean mark = new AtomicBoolean(true);
-        AtomicReference<String> ex = new AtomicReference<>();
-        List<InnerResult<R>> mergeList = new ArrayList<>(task.length * 2);
+        List<ListenableFuture<?>> futures = new ArrayList<>(tasks.size());
 
-        IntStream.range(0, task.length).forEach(index -> {
-            ListenableFuture<InnerResult<R>> future = (ListenableFuture<InnerResult<R>>) POOLTASKEXECUTOR
-                    .submitListenable(() -> {
-                        if (!mark.get()) {
-                            return null;
-                        }
-                        InnerResult<R> result = new InnerResult<>();
-                        result.setIndex(index);
-                        result.setResult(task[index].call());
-                        return result;
-                    });
-
-            future.addCallback(r -> {
-                mergeList.add(r);
-                downCount.decrementAndGet();
-            }, thx -> {
-                ex.set(thx.getMessage());
-                mark.set(false);
-            });
+        IntStream.range(0, tasks.size()).forEach(index -> {
+            ShardTask shard = new ShardTask(() -> {
+                if (mark.get()) {
+                    slots[index] = tasks.get(index).call();
+                }
+                return null;
+            }, options.getTaskTimeout());
+            ListenableFutureTask<Object> future = new ListenableFutureTask<>(shard);
+            shard.future = future;
+            futures.add(future);
+            ThreadContextDecorator.wrap(ObjectUtils.defaultIfNull(options.getExecutor(), executor)).execute(future);
         });
 
-        while (true) {
-            if (downCount.intValue() == 0) {
-                break;
-            }
-            if (!mark.get()) {
-                throw new ConcurrentMergeException("归并计算异常, ex: " + ex.get());
+        await(futures, mark, options.getDeadline(), options.getPolicy(), "归并计算异常");
+
+        // 先确定各任务状态,仅正常完成的任务读取槽位: 状态判定后才完成的任务按超时处理,不会出现无错误的空结果
+        List<R> results = new ArrayList<>(slots.length);
+        Map<Integer, Throwable> errors = new LinkedHashMap<>();
+        for (int i = 0; i < futures.size(); i++) {
+            ListenableFuture<?> future = futures.get(i);
+            R result = null;
+            try {
+                if (!future.isDone() || future.isCancelled()) {
+                    errors.put(i, new TimeoutException("任务超时"));
+                } else {
+                    future.get();
+                    result = (R) slots[i];
+                }
+            } catch (ExecutionException ex) {
+                errors.put(i, ex.getCause());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new ConcurrentMergeException("归并计算异常, 线程中断", ex);
             }
+            results.add(result);
         }
+        return new MergeResult<>(results, errors);
+    }
 
-        return mergeList.stream().sorted(Comparator.comparing(InnerResult::getIndex)).map(val -> val.getResult())
-                .collect(Collectors.toList());
+    /**
+     * 流式归并计算,任务完成即按完成顺序交由消费者处理. 同时执行及待消费的任务不超过窗口大小,
+     * 消费者处理较慢时暂停提交新任务,内存占用与窗口大小而非任务总数成正比
+     *
+     * @param consumer 结果消费者,在调用线程执行
+     * @param window   窗口大小
+     * @param tasks    任务集合
+     * @author gewx
+     **/
+    public static <R> void forEachCompleted(Consumer<? super R> consumer, int window, List<Callable<R>> tasks) {
+        forEachCompleted(executor, consumer, window, tasks);
+    }
+
+    /**
+     * 流式归并计算,任务提交至指定执行器
+     *
+     * @param executor 执行器
+     * @param consumer 结果消费者,在调用线程执行
+     * @param window   窗口大小
+     * @param tasks    任务集合
+     * @author gewx
+     **/
+    public static <R> void forEachCompleted(Executor executor, Consumer<? super R> consumer, int window,
+                                            List<Callable<R>> tasks) {
+        CompletionIterator<R> iterator = new CompletionIterator<>(tasks.iterator(), window, executor);
+        try {
+            iterator.forEachRemaining(consumer);
+        } finally {
+            iterator.cancel();
+        }
+    }
+
+    /**
+     * 流式归并计算,窗口大小为当前归并执行器的线程数
+     *
+     * @param consumer 结果消费者,在调用线程执行
+     * @param task     任务集合
+     * @author gewx
+     **/
+    @SafeVarargs
+    public static <R> void forEachCompleted(Consumer<? super R> consumer, Callable<R>... task) {
+        forEachCompleted(executor, consumer, task);
+    }
+
+    /**
+     * 流式归并计算,任务提交至指定执行器,窗口大小为该执行器的线程数
+     *
+     * @param executor 执行器
+     * @param consumer 结果消费者,在调用线程执行
+     * @param task     任务集合
+     * @author gewx
+     **/
+    @SafeVarargs
+    public static <R> void forEachCompleted(Executor executor, Consumer<? super R> consumer, Callable<R>... task) {
+        forEachCompleted(executor, consumer, window(executor), Arrays.asList(task));
+    }
+
+    /**
+     * 流式归并计算,按完成顺序输出结果的惰性流,语义同forEachCompleted. 提前结束消费时须关闭流以取消其余任务:
+     *
+     * <pre>
+     * try (Stream&lt;R&gt; stream = ConcurrentMergeUtils.stream(tasks, 16)) {
+     *     stream.forEach(writer::write);
+     * }
+     * </pre>
+     *
+     * @param tasks  任务集合
+     * @param window 窗口大小
+     * @return 结果流
+     * @author gewx
+     **/
+    public static <R> Stream<R> stream(List<Callable<R>> tasks, int window) {
+        return stream(executor, tasks, window);
+    }
+
+    /**
+     * 流式归并计算,任务提交至指定执行器
+     *
+     * @param executor 执行器
+     * @param tasks    任务集合
+     * @param window   窗口大小
+     * @return 结果流
+     * @author gewx
+     **/
+    public static <R> Stream<R> stream(Executor executor, List<Callable<R>> tasks, int window) {
+        CompletionIterator<R> iterator = new CompletionIterator<>(tasks.iterator(), window, executor);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, 0), false)
+                .onClose(iterator::cancel);
     }
 
     /**
@@ -202,35 +425,104 @@ public final class ConcurrentMergeUtils {
      * @param task 任务集合
      * @author gewx
      **/
-    @SuppressWarnings({"unchecked", "rawtypes"})
     public static void calculate(Runnable... task) {
-        AtomicInteger downCount = new AtomicInteger(task.length);
+        calculate(executor, task);
+    }
+
+    /**
+     * 并发执行,任务提交至指定执行器
+     *
+     * @param executor 执行器
+     * @param task     任务集合
+     * @author gewx
+     **/
+    public static void calculate(Executor executor, Runnable... task) {
         AtomicBoolean mark = new AtomicBoolean(true);
-        AtomicReference<String> ex = new AtomicReference<>();
+        List<ListenableFuture<?>> futures = new ArrayList<>(task.length);
 
         IntStream.range(0, task.length).forEach(index -> {
-            ListenableFuture future = (ListenableFuture) POOLTASKEXECUTOR.submitListenable(() -> {
+            ListenableFutureTask<?> future = new ListenableFutureTask<>(() -> {
                 if (mark.get()) {
                     task[index].run();
                 }
-            });
-
-            future.addCallback(r -> {
-                downCount.decrementAndGet();
-            }, thx -> {
-                ex.set(thx.getMessage());
-                mark.set(false);
-            });
+            }, null);
+            futures.add(future);
+            ThreadContextDecorator.wrap(executor).execute(future);
         });
 
-        while (true) {
-            if (downCount.intValue() == 0) {
-                break;
+        await(futures, mark, TimeUnit.SECONDS.toMillis(TIMEOUT), MergeOptions.Policy.FAIL_FAST, "并发执行异常");
+    }
+
+    /**
+     * 等待全部任务完成. FAIL_FAST策略下任一任务失败即返回; 失败、等待超时或线程中断时取消其余任务(未开始的跳过,执行中的中断)
+     *
+     * @param futures 任务结果
+     * @param mark    任务继续执行标识
+     * @param timeout 等待超时时间,单位:毫秒
+     * @param policy  失败策略
+     * @param message 异常描述
+     * @author gewx
+     **/
+    private static void await(List<ListenableFuture<?>> futures, AtomicBoolean mark, long timeout,
+                              MergeOptions.Policy policy, String message) {
+        CompletableFuture<?>[] completables = futures.stream().map(ListenableFuture::completable)
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture<?> barrier = CompletableFuture.allOf(completables);
+        if (policy == MergeOptions.Policy.FAIL_FAST) {
+            CompletableFuture<Object> failure = new CompletableFuture<>();
+            for (CompletableFuture<?> completable : completables) {
+                completable.whenComplete((r, thx) -> {
+                    if (thx != null) {
+                        failure.completeExceptionally(thx);
+                    }
+                });
             }
-            if (!mark.get()) {
-                throw new ConcurrentMergeException("并发执行异常, ex: " + ex.get());
+            barrier = CompletableFuture.anyOf(barrier, failure);
+        }
+
+        try {
+            barrier.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | CancellationException ex) {
+            if (policy == MergeOptions.Policy.FAIL_FAST) {
+                cancel(futures, mark);
+                Throwable cause = ex instanceof ExecutionException ? ex.getCause() : ex;
+                throw new ConcurrentMergeException(message + ", ex: " + describe(cause), cause);
+            }
+        } catch (TimeoutException ex) {
+            cancel(futures, mark);
+            if (policy != MergeOptions.Policy.BEST_EFFORT) {
+                throw new ConcurrentMergeException(message + ", 等待超时: " + timeout + "ms");
             }
+        } catch (InterruptedException ex) {
+            cancel(futures, mark);
+            Thread.currentThread().interrupt();
+            throw new ConcurrentMergeException(message + ", 线程中断", ex);
+        }
+    }
+
+    /**
+     * 执行器的并发宽度,用作流式归并的默认窗口. 每任务一个线程的执行器(如虚拟线程)无固定宽度,取IO_POOL_SIZE
+     **/
+    private static int window(Executor executor) {
+        if (executor instanceof ThreadPoolTaskExecutor) {
+            return ((ThreadPoolTaskExecutor) executor).getMaxPoolSize();
         }
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getMaximumPoolSize();
+        }
+        if (executor instanceof ForkJoinPool) {
+            return ((ForkJoinPool) executor).getParallelism();
+        }
+        return IO_POOL_SIZE;
+    }
+
+    private static String describe(Throwable thx) {
+        return thx instanceof CancellationException ? "任务超时" : thx.getMessage();
+    }
+
+    private static void cancel(List<ListenableFuture<?>> futures, AtomicBoolean mark) {
+        mark.set(false);
+        futures.forEach(future -> future.cancel(true));
     }
 
     /**
@@ -249,12 +541,167 @@ public final class ConcurrentMergeUtils {
         return list;
     }
 
-    @Setter
-    @Getter
-    static class InnerResult<R> {
+    /**
+     * 分治计算任务,数据量超过任务深度且仍有空闲线程可窃取时对半拆分
+     **/
+    private static final class MergeTask<T, R> extends RecursiveTask<R> {
+
+        private static final long serialVersionUID = 3315094640364591237L;
+
+        private final transient Function<List<T>, R> execute;
+
+        private final transient List<T> data;
+
+        private final transient BinaryOperator<R> combiner;
+
+        private final int depth;
+
+        private final AtomicBoolean mark;
+
+        MergeTask(Function<List<T>, R> execute, List<T> data, BinaryOperator<R> combiner, int depth,
+                  AtomicBoolean mark) {
+            this.execute = execute;
+            this.data = data;
+            this.combiner = combiner;
+            this.depth = depth;
+            this.mark = mark;
+        }
+
+        @Override
+        protected R compute() {
+            if (!mark.get()) {
+                return null;
+            }
+
+            int size = data.size();
+            if (size <= depth || getSurplusQueuedTaskCount() > SURPLUS_THRESHOLD) {
+                return execute.apply(data);
+            }
+
+            int middle = size >>> 1;
+            MergeTask<T, R> left = new MergeTask<>(execute, data.subList(0, middle), combiner, depth, mark);
+            MergeTask<T, R> right = new MergeTask<>(execute, data.subList(middle, size), combiner, depth, mark);
+            left.fork();
+            R rightResult = right.compute();
+            return combiner.apply(left.join(), rightResult);
+        }
+    }
+
+    /**
+     * 按完成顺序输出结果的迭代器,仅在调用线程使用
+     **/
+    private static final class CompletionIterator<R> implements Iterator<R> {
+
+        private final CompletionService<R> service;
+
+        private final Set<Future<R>> running = new HashSet<>();
+
+        private final int window;
 
-        private Integer index;
+        private Iterator<Callable<R>> tasks;
 
-        private R result;
+        CompletionIterator(Iterator<Callable<R>> tasks, int window, Executor executor) {
+            this.service = new ExecutorCompletionService<>(ThreadContextDecorator.wrap(executor));
+            this.tasks = tasks;
+            this.window = Math.max(window, 1);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (running.size() < window && tasks.hasNext()) {
+                running.add(service.submit(tasks.next()));
+            }
+            return !running.isEmpty();
+        }
+
+        @Override
+        public R next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            try {
+                Future<R> future = service.poll(TIMEOUT, TimeUnit.SECONDS);
+                if (future == null) {
+                    cancel();
+                    throw new ConcurrentMergeException("归并计算异常, 等待超时: " + TIMEOUT + "s");
+                }
+                running.remove(future);
+                return future.get();
+            } catch (ExecutionException ex) {
+                cancel();
+                throw new ConcurrentMergeException("归并计算异常, ex: " + ex.getCause().getMessage(), ex.getCause());
+            } catch (InterruptedException ex) {
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new ConcurrentMergeException("归并计算异常, 线程中断", ex);
+            }
+        }
+
+        /**
+         * 取消未完成及未提交的任务
+         **/
+        void cancel() {
+            tasks = Collections.emptyIterator();
+            running.forEach(future -> future.cancel(true));
+            running.clear();
+        }
+    }
+
+    /**
+     * 带超时的任务,开始执行时登记到期取消,结束时撤销
+     **/
+    private static final class ShardTask implements Callable<Object> {
+
+        private final Callable<Object> task;
+
+        private final long timeout;
+
+        private volatile Future<?> future;
+
+        ShardTask(Callable<Object> task, long timeout) {
+            this.task = task;
+            this.timeout = timeout;
+        }
+
+        @Override
+        public Object call() throws Exception {
+            if (timeout <= 0) {
+                return task.call();
+            }
+
+            ScheduledFuture<?> timer = TIMER.schedule(() -> future.cancel(true), timeout, TimeUnit.MILLISECONDS);
+            try {
+                return task.call();
+            } finally {
+                timer.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * IO型执行器,首次使用时创建
+     **/
+    private static final class IoExecutorHolder {
+
+        private static final Executor INSTANCE = create();
+
+        private static Executor create() {
+            try {
+                Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (Executor) method.invoke(null);
+            } catch (ReflectiveOperationException ex) {
+                ThreadPoolTaskExecutor elastic = new ThreadPoolTaskExecutor();
+                elastic.setQueueCapacity(0);
+                elastic.setCorePoolSize(CORE_SIZE * 2);
+                elastic.setMaxPoolSize(IO_POOL_SIZE);
+                elastic.setKeepAliveSeconds(60);
+                elastic.setAllowCoreThreadTimeOut(true);
+                elastic.setThreadNamePrefix("CONCURRENT_MERGER_IO_");
+                ExecutorMetrics.instrument("concurrentMergeIo", elastic, null, new ThreadPoolExecutor.CallerRunsPolicy());
+                elastic.initialize();
+                return elastic;
+            }
+        }
     }
 }
@@ -0,0 +1,114 @@
+package micro.commons.util;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import lombok.Getter;
+
+/**
+ * 归并计算选项: 整体截止时间、单任务超时、失败策略与执行器
+ *
+ * <pre>
+ * MergeOptions options = MergeOptions.newBuilder().deadline(800, TimeUnit.MILLISECONDS)
+ * 		.taskTimeout(500, TimeUnit.MILLISECONDS).policy(MergeOptions.Policy.BEST_EFFORT).build();
+ * MergeResult&lt;Order&gt; result = ConcurrentMergeUtils.calculate(options, tasks);
+ * </pre>
+ *
+ * @author gewx
+ **/
+@Getter
+public final class MergeOptions {
+
+	/**
+	 * 整体截止时间,单位:毫秒
+	 **/
+	private final long deadline;
+
+	/**
+	 * 单任务超时时间,从任务开始执行计时,0表示不限制,单位:毫秒
+	 **/
+	private final long taskTimeout;
+
+	/**
+	 * 失败策略
+	 **/
+	private final Policy policy;
+
+	/**
+	 * 执行器,null表示使用全局归并执行器
+	 **/
+	private final Executor executor;
+
+	private MergeOptions(Builder builder) {
+		this.deadline = builder.deadline;
+		this.taskTimeout = builder.taskTimeout;
+		this.policy = builder.policy;
+		this.executor = builder.executor;
+	}
+
+	public static Builder newBuilder() {
+		return new Builder();
+	}
+
+	/**
+	 * 失败策略
+	 **/
+	public enum Policy {
+
+		/**
+		 * 任一任务失败或超时即取消其余任务并抛出异常
+		 **/
+		FAIL_FAST,
+
+		/**
+		 * 等待全部任务结束,失败任务记录于结果中; 超过整体截止时间抛出异常
+		 **/
+		COLLECT_ERRORS,
+
+		/**
+		 * 等待全部任务结束或到达整体截止时间,返回已完成的结果,未完成任务取消并按超时记录
+		 **/
+		BEST_EFFORT
+	}
+
+	public static final class Builder {
+
+		private long deadline;
+
+		private long taskTimeout;
+
+		private Policy policy;
+
+		private Executor executor;
+
+		public Builder() {
+			deadline = TimeUnit.SECONDS.toMillis(60);
+			taskTimeout = 0;
+			policy = Policy.FAIL_FAST;
+		}
+
+		public Builder deadline(long deadline, TimeUnit unit) {
+			this.deadline = unit.toMillis(deadline);
+			return this;
+		}
+
+		public Builder taskTimeout(long taskTimeout, TimeUnit unit) {
+			this.taskTimeout = unit.toMillis(taskTimeout);
+			return this;
+		}
+
+		public Builder policy(Policy policy) {
+			this.policy = policy;
+			return this;
+		}
+
+		public Builder executor(Executor executor) {
+			this.executor = executor;
+			return this;
+		}
+
+		public MergeOptions build() {
+			return new MergeOptions(this);
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package micro.commons.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Getter;
+
+/**
+ * 带失败信息的归并结果
+ *
+ * @author gewx
+ **/
+@Getter
+public final class MergeResult<R> {
+
+	/**
+	 * 按任务顺序输出的结果,失败任务对应位置为null
+	 **/
+	private final List<R> results;
+
+	/**
+	 * 失败任务异常, key: 任务下标, 按下标升序; 超时任务为TimeoutException
+	 **/
+	private final Map<Integer, Throwable> errors;
+
+	MergeResult(List<R> results, Map<Integer, Throwable> errors) {
+		this.results = results;
+		this.errors = errors;
+	}
+
+	/**
+	 * 失败任务下标
+	 *
+	 * @author gewx
+	 * @return 按升序排列的下标
+	 **/
+	public List<Integer> getFailedIndexes() {
+		return new ArrayList<>(errors.keySet());
+	}
+
+	/**
+	 * 是否全部任务成功
+	 *
+	 * @author gewx
+	 * @return 无失败任务返回true
+	 **/
+	public boolean isComplete() {
+		return errors.isEmpty();
+	}
+}
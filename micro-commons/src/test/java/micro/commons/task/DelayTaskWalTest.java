@@ -0,0 +1,209 @@
+package micro.commons.task;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * DelayTaskWal校验: 写入回放、崩溃后的残缺记录、压缩及压缩中途崩溃残留的旧段
+ *
+ * @author gewx
+ **/
+public final class DelayTaskWalTest {
+
+	/**
+	 * 段文件大小,较小以便触发滚动
+	 **/
+	private static final int SEGMENT_SIZE = 4096;
+
+	/**
+	 * 压缩间隔,测试中手动压缩
+	 **/
+	private static final long COMPACT_INTERVAL = 3600000;
+
+	public static void main(String[] args) throws Exception {
+		writeAndReplay();
+		tornRecord();
+		compaction();
+		crashDuringCompaction();
+		System.out.println("DelayTaskWalTest 通过");
+	}
+
+	/**
+	 * 登记、覆盖与完成事件重启后按顺序回放
+	 **/
+	private static void writeAndReplay() throws IOException {
+		Path dir = Files.createTempDirectory("delay-wal");
+		try {
+			DelayTaskWal wal = open(dir, true);
+			wal.schedule(record("a", 1000));
+			wal.schedule(record("b", 2000));
+			wal.schedule(record("c", 3000));
+			wal.complete("b");
+			wal.schedule(record("a", 1500));
+			wal.close();
+
+			Map<String, DelayTaskRecord> pending = pending(open(dir, true));
+			check(pending.keySet().equals(new HashSet<>(Arrays.asList("a", "c"))),
+					"回放待执行任务, actual: " + pending.keySet());
+			check(pending.get("a").getExpire() == 1500, "回放覆盖后的记录");
+			check("payload-c".equals(pending.get("c").getPayload()), "回放记录内容");
+		} finally {
+			delete(dir);
+		}
+	}
+
+	/**
+	 * 未关闭即重新打开(模拟崩溃),最后一条记录残缺时丢弃该记录,之前的记录完整回放
+	 **/
+	private static void tornRecord() throws IOException {
+		Path dir = Files.createTempDirectory("delay-wal");
+		try {
+			DelayTaskWal wal = open(dir, false);
+			wal.schedule(record("a", 1000));
+			wal.schedule(record("b", 2000));
+			wal.awaitFlush(wal.writeSchedule(record("c", 3000)));
+
+			Path segment = segments(dir).get(segments(dir).size() - 1);
+			byte[] bytes = Files.readAllBytes(segment);
+			ByteBuffer in = ByteBuffer.wrap(bytes);
+			int last = 0;
+			while (in.remaining() >= 8) {
+				int length = in.getInt(in.position());
+				if (length <= 0) {
+					break;
+				}
+				last = in.position();
+				in.position(in.position() + 8 + length);
+			}
+			// 破坏最后一条记录的记录体,校验失败
+			bytes[last + 8 + 1] ^= 0xFF;
+			Files.write(segment, bytes);
+
+			Map<String, DelayTaskRecord> pending = pending(open(dir, false));
+			check(pending.size() == 2 && pending.containsKey("a") && pending.containsKey("b"),
+					"残缺记录之前的记录回放, actual: " + pending.keySet());
+		} finally {
+			delete(dir);
+		}
+	}
+
+	/**
+	 * 压缩后旧段删除,仅保留待执行任务; 压缩后的写入与快照段一并回放
+	 **/
+	private static void compaction() throws IOException {
+		Path dir = Files.createTempDirectory("delay-wal");
+		try {
+			DelayTaskWal wal = open(dir, false);
+			for (int i = 0; i < 200; i++) {
+				wal.schedule(record("t" + i, i));
+			}
+			for (int i = 0; i < 200; i++) {
+				if (i % 10 != 0) {
+					wal.complete("t" + i);
+				}
+			}
+			int before = segments(dir).size();
+			check(before > 2, "写入跨越多个段, segments: " + before);
+
+			wal.compact();
+			check(segments(dir).size() == 2, "压缩后仅余快照段与当前段, segments: " + segments(dir));
+			wal.schedule(record("after", 1));
+			wal.complete("t0");
+			wal.close();
+
+			Map<String, DelayTaskRecord> pending = pending(open(dir, false));
+			check(pending.size() == 20, "压缩后回放, actual: " + pending.size());
+			check(pending.containsKey("after") && !pending.containsKey("t0") && pending.containsKey("t190"),
+					"快照段与后续段按顺序回放");
+		} finally {
+			delete(dir);
+		}
+	}
+
+	/**
+	 * 快照段写入后、旧段删除前崩溃: 残留旧段中的已完成任务不复活,重启时清理残留旧段
+	 **/
+	private static void crashDuringCompaction() throws IOException {
+		Path dir = Files.createTempDirectory("delay-wal");
+		Path backup = Files.createTempDirectory("delay-wal-backup");
+		try {
+			DelayTaskWal wal = open(dir, false);
+			for (int i = 0; i < 100; i++) {
+				wal.schedule(record("t" + i, i));
+			}
+			for (int i = 1; i < 100; i++) {
+				wal.complete("t" + i);
+			}
+			wal.awaitFlush(wal.writeSchedule(record("t0", 0)));
+			Path oldest = segments(dir).get(0);
+			Files.copy(oldest, backup.resolve(oldest.getFileName()));
+
+			wal.compact();
+			wal.close();
+			check(!Files.exists(oldest), "压缩删除旧段");
+			Files.copy(backup.resolve(oldest.getFileName()), oldest, StandardCopyOption.REPLACE_EXISTING);
+
+			Map<String, DelayTaskRecord> pending = pending(open(dir, false));
+			check(pending.keySet().equals(Collections.singleton("t0")),
+					"残留旧段不复活已完成任务, actual: " + pending.keySet());
+			check(!Files.exists(oldest), "重启清理残留旧段");
+		} finally {
+			delete(dir);
+			delete(backup);
+		}
+	}
+
+	private static DelayTaskWal open(Path dir, boolean sync) {
+		return DelayTaskWal.open(dir.toString(), SEGMENT_SIZE, sync, COMPACT_INTERVAL);
+	}
+
+	private static Map<String, DelayTaskRecord> pending(DelayTaskWal wal) {
+		try {
+			return wal.pending().stream().collect(Collectors.toMap(DelayTaskRecord::getTaskId, r -> r));
+		} finally {
+			wal.close();
+		}
+	}
+
+	private static DelayTaskRecord record(String taskId, long expire) {
+		TransactionDelayTaskBean taskBean = new TransactionDelayTaskBean();
+		taskBean.setTaskId(taskId);
+		taskBean.setTaskName("walTest");
+		taskBean.setExpire(expire);
+		taskBean.setPriority(TaskPriority.NORMAL);
+		taskBean.setPoolName(TaskExecutorRegistry.GLOBAL);
+		taskBean.setPayload("payload-" + taskId);
+		return DelayTaskRecord.of(taskBean);
+	}
+
+	private static List<Path> segments(Path dir) throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.filter(p -> p.toString().endsWith(".wal")).sorted().collect(Collectors.toList());
+		}
+	}
+
+	private static void delete(Path dir) throws IOException {
+		try (Stream<Path> files = Files.walk(dir)) {
+			for (Path path : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.deleteIfExists(path);
+			}
+		}
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+}
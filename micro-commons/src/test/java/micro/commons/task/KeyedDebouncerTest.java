@@ -0,0 +1,124 @@
+package micro.commons.task;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * KeyedDebouncer时序校验: trailing、leading、maxWait、节流与取消. 时间轮刻度为10毫秒,断言留有余量
+ *
+ * @author gewx
+ **/
+public final class KeyedDebouncerTest {
+
+	public static void main(String[] args) throws Exception {
+		trailing();
+		leading();
+		maxWait();
+		maxWaitClamp();
+		throttle();
+		cancel();
+		System.out.println("KeyedDebouncerTest 通过");
+		System.exit(0);
+	}
+
+	/**
+	 * 静默期内多次提交合并为一次,执行最后一次提交的动作; 不同键互不合并
+	 **/
+	private static void trailing() throws InterruptedException {
+		KeyedDebouncer debouncer = KeyedDebouncer.newBuilder().waitMillis(100).build();
+		List<String> runs = new CopyOnWriteArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			int value = i;
+			debouncer.submit("a", () -> runs.add("a" + value));
+			Thread.sleep(20);
+		}
+		debouncer.submit("b", () -> runs.add("b"));
+		check(runs.isEmpty(), "静默期内不执行");
+
+		Thread.sleep(300);
+		check(runs.size() == 2 && runs.contains("a4") && runs.contains("b"), "按键合并执行最后一次提交, actual: " + runs);
+		check(debouncer.size() == 0, "静默后移除键");
+	}
+
+	/**
+	 * leading: 首次提交立即执行,窗口内后续提交不执行
+	 **/
+	private static void leading() throws InterruptedException {
+		KeyedDebouncer debouncer = KeyedDebouncer.newBuilder().waitMillis(100).leading(true).trailing(false).build();
+		AtomicInteger runs = new AtomicInteger();
+		debouncer.submit("a", runs::incrementAndGet);
+		Thread.sleep(50);
+		check(runs.get() == 1, "首次提交立即执行");
+		debouncer.submit("a", runs::incrementAndGet);
+		Thread.sleep(300);
+		check(runs.get() == 1, "窗口内后续提交不执行, actual: " + runs.get());
+
+		debouncer.submit("a", runs::incrementAndGet);
+		Thread.sleep(50);
+		check(runs.get() == 2, "窗口结束后再次立即执行");
+	}
+
+	/**
+	 * maxWait: 持续提交时每maxWait至少执行一次
+	 **/
+	private static void maxWait() throws InterruptedException {
+		KeyedDebouncer debouncer = KeyedDebouncer.newBuilder().waitMillis(100).maxWait(200).build();
+		AtomicInteger runs = new AtomicInteger();
+		long end = System.currentTimeMillis() + 900;
+		while (System.currentTimeMillis() < end) {
+			debouncer.submit("a", runs::incrementAndGet);
+			Thread.sleep(20);
+		}
+		check(runs.get() >= 3 && runs.get() <= 5, "持续提交按maxWait执行, actual: " + runs.get());
+		Thread.sleep(300);
+		check(debouncer.size() == 0, "静默后移除键");
+	}
+
+	/**
+	 * maxWait小于静默期时按静默期处理
+	 **/
+	private static void maxWaitClamp() throws InterruptedException {
+		KeyedDebouncer debouncer = KeyedDebouncer.newBuilder().waitMillis(200).maxWait(50).build();
+		AtomicInteger runs = new AtomicInteger();
+		debouncer.submit("a", runs::incrementAndGet);
+		Thread.sleep(100);
+		check(runs.get() == 0, "maxWait按静默期处理,不提前执行");
+		Thread.sleep(300);
+		check(runs.get() == 1, "静默期后执行, actual: " + runs.get());
+	}
+
+	/**
+	 * 节流: 首次提交立即执行,之后每wait至多执行一次
+	 **/
+	private static void throttle() throws InterruptedException {
+		KeyedDebouncer debouncer = KeyedDebouncer.newBuilder().throttle(100).build();
+		AtomicInteger runs = new AtomicInteger();
+		long end = System.currentTimeMillis() + 500;
+		while (System.currentTimeMillis() < end) {
+			debouncer.submit("a", runs::incrementAndGet);
+			Thread.sleep(10);
+		}
+		Thread.sleep(300);
+		check(runs.get() >= 4 && runs.get() <= 8, "节流执行次数, actual: " + runs.get());
+	}
+
+	/**
+	 * 取消待执行动作
+	 **/
+	private static void cancel() throws InterruptedException {
+		KeyedDebouncer debouncer = KeyedDebouncer.newBuilder().waitMillis(100).build();
+		AtomicInteger runs = new AtomicInteger();
+		debouncer.submit("a", runs::incrementAndGet);
+		check(debouncer.cancel("a"), "存在待执行动作");
+		check(!debouncer.cancel("a"), "重复取消返回false");
+		Thread.sleep(300);
+		check(runs.get() == 0 && debouncer.size() == 0, "取消后不执行");
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package micro.commons.task;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PriorityLaneQueue校验: 优先级出队顺序、同一通道先进先出、共享容量上限与运行期调整容量
+ *
+ * @author gewx
+ **/
+public final class PriorityLaneQueueTest {
+
+	public static void main(String[] args) throws Exception {
+		priorityOrder();
+		capacity();
+		blockingPut();
+		System.out.println("PriorityLaneQueueTest 通过");
+	}
+
+	/**
+	 * 高优先级先出队,同一优先级先进先出,非PrioritizedTask按NORMAL处理
+	 **/
+	private static void priorityOrder() {
+		PriorityLaneQueue queue = new PriorityLaneQueue(16);
+		Runnable low = task(TaskPriority.LOW);
+		Runnable normal1 = task(TaskPriority.NORMAL);
+		Runnable plain = () -> {
+		};
+		Runnable high1 = task(TaskPriority.HIGH);
+		Runnable normal2 = task(null);
+		Runnable high2 = task(TaskPriority.HIGH);
+		for (Runnable task : new Runnable[] { low, normal1, plain, high1, normal2, high2 }) {
+			check(queue.offer(task), "offer");
+		}
+
+		check(queue.peek() == high1, "peek返回最高优先级队首");
+		List<Runnable> drained = new ArrayList<>();
+		check(queue.drainTo(drained, 2) == 2 && queue.size() == 4, "drainTo按上限取出");
+		Runnable[] expected = { high1, high2, normal1, plain, normal2, low };
+		for (int i = 0; i < 2; i++) {
+			check(drained.get(i) == expected[i], "出队顺序, index: " + i);
+		}
+		for (int i = 2; i < expected.length; i++) {
+			check(queue.poll() == expected[i], "出队顺序, index: " + i);
+		}
+		check(queue.poll() == null && queue.isEmpty(), "队列已空");
+	}
+
+	/**
+	 * 全部通道共享容量; forceOffer忽略上限; 缩容保留已入队任务
+	 **/
+	private static void capacity() {
+		PriorityLaneQueue queue = new PriorityLaneQueue(2);
+		check(queue.offer(task(TaskPriority.LOW)), "offer low");
+		check(queue.offer(task(TaskPriority.HIGH)), "offer high");
+		check(!queue.offer(task(TaskPriority.HIGH)), "容量已满拒绝高优先级");
+		check(queue.remainingCapacity() == 0, "remainingCapacity为0");
+
+		queue.forceOffer(task(TaskPriority.NORMAL));
+		check(queue.size() == 3, "forceOffer忽略容量上限");
+
+		queue.setCapacity(1);
+		check(queue.size() == 3 && !queue.offer(task(TaskPriority.HIGH)), "缩容保留已入队任务");
+		queue.clear();
+		check(queue.offer(task(TaskPriority.HIGH)) && !queue.offer(task(TaskPriority.HIGH)), "缩容后按新容量限制");
+
+		queue.setCapacity(2);
+		check(queue.offer(task(TaskPriority.LOW)), "扩容后可继续入队");
+	}
+
+	/**
+	 * 队列满时put阻塞,出队或扩容后唤醒; 超时offer到期返回false
+	 **/
+	private static void blockingPut() throws InterruptedException {
+		PriorityLaneQueue queue = new PriorityLaneQueue(1);
+		queue.put(task(TaskPriority.NORMAL));
+		check(!queue.offer(task(TaskPriority.HIGH), 50, TimeUnit.MILLISECONDS), "超时offer返回false");
+
+		CountDownLatch put = new CountDownLatch(1);
+		Thread producer = new Thread(() -> {
+			try {
+				queue.put(task(TaskPriority.HIGH));
+				put.countDown();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		producer.start();
+		check(!put.await(100, TimeUnit.MILLISECONDS), "队列满时put阻塞");
+		check(queue.take() != null, "take");
+		check(put.await(1, TimeUnit.SECONDS), "出队后put被唤醒");
+		producer.join();
+
+		check(queue.poll(1, TimeUnit.SECONDS) != null, "poll取出被唤醒的任务");
+		check(queue.poll(50, TimeUnit.MILLISECONDS) == null, "空队列poll超时返回null");
+	}
+
+	private static Runnable task(TaskPriority priority) {
+		return new PrioritizedTask(priority, () -> {
+		});
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+}
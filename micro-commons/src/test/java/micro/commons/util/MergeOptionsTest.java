@@ -0,0 +1,137 @@
+package micro.commons.util;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import micro.commons.exception.ConcurrentMergeException;
+
+/**
+ * MergeOptions失败策略校验: FAIL_FAST、COLLECT_ERRORS、BEST_EFFORT与单任务超时; 每个任务或有结果或有错误
+ *
+ * @author gewx
+ **/
+public final class MergeOptionsTest {
+
+	private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(8);
+
+	public static void main(String[] args) {
+		failFast();
+		collectErrors();
+		bestEffort();
+		taskTimeout();
+		System.out.println("MergeOptionsTest 通过");
+		// 归并计算的全局执行器与计时线程为非守护线程
+		System.exit(0);
+	}
+
+	/**
+	 * 任一任务失败即抛出异常,不等待慢任务
+	 **/
+	private static void failFast() {
+		MergeOptions options = options(MergeOptions.Policy.FAIL_FAST, 5000, 0);
+		IllegalStateException failure = new IllegalStateException("boom");
+		long start = System.currentTimeMillis();
+		try {
+			ConcurrentMergeUtils.calculate(options, Arrays.asList(value("a", 0), fail(failure, 20), value("c", 2000)));
+			throw new AssertionError("FAIL_FAST未抛出异常");
+		} catch (ConcurrentMergeException ex) {
+			check(ex.getCause() == failure, "FAIL_FAST异常原因为失败任务的异常");
+		}
+		check(System.currentTimeMillis() - start < 1000, "FAIL_FAST不等待慢任务");
+	}
+
+	/**
+	 * 等待全部任务,失败任务记录于结果; 超过整体截止时间抛出异常
+	 **/
+	private static void collectErrors() {
+		MergeOptions options = options(MergeOptions.Policy.COLLECT_ERRORS, 5000, 0);
+		IllegalStateException failure = new IllegalStateException("boom");
+		MergeResult<String> result = ConcurrentMergeUtils.calculate(options,
+				Arrays.asList(value("a", 50), fail(failure, 0), value("c", 0)));
+		check(result.getResults().equals(Arrays.asList("a", null, "c")), "按任务顺序输出, actual: " + result.getResults());
+		check(result.getFailedIndexes().equals(Arrays.asList(1)) && result.getErrors().get(1) == failure,
+				"记录失败任务异常");
+		check(!result.isComplete(), "存在失败任务");
+		consistent(result);
+
+		try {
+			ConcurrentMergeUtils.calculate(options(MergeOptions.Policy.COLLECT_ERRORS, 100, 0),
+					Arrays.asList(value("a", 0), value("b", 1000)));
+			throw new AssertionError("COLLECT_ERRORS超过截止时间未抛出异常");
+		} catch (ConcurrentMergeException ex) {
+			check(ex.getMessage().contains("等待超时"), "截止时间异常信息, actual: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * 到达整体截止时间返回已完成的结果,未完成任务按超时记录
+	 **/
+	private static void bestEffort() {
+		MergeOptions options = options(MergeOptions.Policy.BEST_EFFORT, 200, 0);
+		long start = System.currentTimeMillis();
+		MergeResult<String> result = ConcurrentMergeUtils.calculate(options,
+				Arrays.asList(value("a", 0), value("b", 2000), value("c", 20)));
+		check(System.currentTimeMillis() - start < 1000, "BEST_EFFORT按截止时间返回");
+		check(result.getResults().equals(Arrays.asList("a", null, "c")), "返回已完成结果, actual: " + result.getResults());
+		check(result.getFailedIndexes().equals(Arrays.asList(1)) && result.getErrors().get(1) instanceof TimeoutException,
+				"未完成任务按超时记录");
+		consistent(result);
+
+		MergeResult<String> all = ConcurrentMergeUtils.calculate(options, Arrays.asList(value("a", 0), value("b", 0)));
+		check(all.isComplete() && all.getResults().equals(Arrays.asList("a", "b")), "全部完成");
+	}
+
+	/**
+	 * 单任务超时从任务开始执行计时,到期取消该任务
+	 **/
+	private static void taskTimeout() {
+		MergeOptions options = options(MergeOptions.Policy.COLLECT_ERRORS, 5000, 100);
+		long start = System.currentTimeMillis();
+		MergeResult<String> result = ConcurrentMergeUtils.calculate(options,
+				Arrays.asList(value("a", 0), value("b", 2000)));
+		check(System.currentTimeMillis() - start < 1000, "超时任务被取消");
+		check("a".equals(result.getResults().get(0)) && result.getErrors().get(1) instanceof TimeoutException,
+				"超时任务按超时记录, actual: " + result.getErrors());
+		consistent(result);
+	}
+
+	/**
+	 * 结果与错误互斥且覆盖全部任务
+	 **/
+	private static void consistent(MergeResult<String> result) {
+		List<String> results = result.getResults();
+		for (int i = 0; i < results.size(); i++) {
+			check(results.get(i) != null ^ result.getErrors().containsKey(i), "任务结果与错误不一致, index: " + i);
+		}
+	}
+
+	private static MergeOptions options(MergeOptions.Policy policy, long deadline, long taskTimeout) {
+		return MergeOptions.newBuilder().policy(policy).deadline(deadline, TimeUnit.MILLISECONDS)
+				.taskTimeout(taskTimeout, TimeUnit.MILLISECONDS).executor(EXECUTOR).build();
+	}
+
+	private static Callable<String> value(String value, long sleepMillis) {
+		return () -> {
+			Thread.sleep(sleepMillis);
+			return value;
+		};
+	}
+
+	private static Callable<String> fail(RuntimeException ex, long sleepMillis) {
+		return () -> {
+			Thread.sleep(sleepMillis);
+			throw ex;
+		};
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+}
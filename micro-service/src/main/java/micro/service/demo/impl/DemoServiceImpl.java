@@ -6,7 +6,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
 
-import micro.commons.concurrent.ConcurrentLock;
+import micro.commons.annotation.DistributedLock;
 import micro.commons.log.MicroLogger;
 import micro.commons.page.PageParameter;
 import micro.commons.page.Pages;
@@ -28,33 +28,28 @@ public class DemoServiceImpl implements DemoService {
 	@Autowired
 	private DemoDao demoDao;
 
-	@Autowired
-	private ConcurrentLock concurrentLock;
-
 	/**
-	 * 支持并发处理
+	 * 支持并发处理,按同步Id加锁,锁持有至事务提交之后
 	 **/
 	@Override
+	@DistributedLock(name = "syncData", key = "#id", timeout = 5)
 	@Transactional(isolation = Isolation.READ_COMMITTED, rollbackFor = Exception.class)
 	public void syncDataById(int id) {
 		final String methodName = "syncDataForId";
 		LOGGER.enter(methodName, "业务数据同步服务[start], syncId: " + id);
 
-		concurrentLock.key("concurrent").timeOut(5).execute(() -> {
-			User u = new User();
-			u.setId(String.valueOf(System.currentTimeMillis()));
-			u.setUserName("Java");
-			int result = demoDao.save(u);
-			LOGGER.info("新用户同步成功,id: " + u.getId() + ", result: " + result);
+		User u = new User();
+		u.setId(String.valueOf(System.currentTimeMillis()));
+		u.setUserName("Java");
+		int result = demoDao.save(u);
+		LOGGER.info("新用户同步成功,id: " + u.getId() + ", result: " + result);
 
-			User update = new User();
-			update.setId(u.getId());
-			update.setUserName("JavaNew");
+		User update = new User();
+		update.setId(u.getId());
+		update.setUserName("JavaNew");
 
-			int updateLine = demoDao.updateById(update);
-			LOGGER.info("更新行数,line: " + updateLine);
-			return null;
-		});
+		int updateLine = demoDao.updateById(update);
+		LOGGER.info("更新行数,line: " + updateLine);
 
 		LOGGER.exit(methodName, "业务数据同步服务[end]");
 	}
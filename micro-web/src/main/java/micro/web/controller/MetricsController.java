@@ -0,0 +1,61 @@
+package micro.web.controller;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import micro.commons.concurrent.LockMetrics;
+import micro.commons.metrics.ExecutorMetrics;
+import micro.commons.task.DelayTaskRetry;
+import micro.web.util.Response;
+
+/**
+ * 运行指标
+ * 
+ * @author gewx
+ **/
+@RequestMapping(value = "/metrics")
+@RestController
+public class MetricsController {
+
+	@Autowired
+	private LockMetrics lockMetrics;
+
+	/**
+	 * 分布式锁指标及热点锁钥
+	 * 
+	 * @author gewx
+	 * @param top 热点锁钥数量
+	 * @return 指标数据
+	 **/
+	@RequestMapping(value = "/lock", method = RequestMethod.GET)
+	public Map<String, Object> lock(@RequestParam(defaultValue = "20") int top) {
+		return Response.SUCCESS.newBuilder().toResult(lockMetrics.snapshot(top));
+	}
+
+	/**
+	 * 线程池指标: 队列深度、活跃线程、排队与执行耗时、完成/异常/拒绝计数
+	 * 
+	 * @author gewx
+	 * @return 指标数据
+	 **/
+	@RequestMapping(value = "/executor", method = RequestMethod.GET)
+	public Map<String, Object> executor() {
+		return Response.SUCCESS.newBuilder().toResult(ExecutorMetrics.snapshotAll());
+	}
+
+	/**
+	 * 延迟任务死信: 重试耗尽的任务及最后一次异常
+	 * 
+	 * @author gewx
+	 * @return 死信列表
+	 **/
+	@RequestMapping(value = "/dead-letter", method = RequestMethod.GET)
+	public Map<String, Object> deadLetter() {
+		return Response.SUCCESS.newBuilder().toResult(DelayTaskRetry.getDeadLetterStore().list());
+	}
+}